@@ -1,11 +1,17 @@
 import lights.Light;
 import materials.*;
+import scene.models.MeshInstance;
 import scene.models.Transform;
 import scene.models.TriangleModel;
 import scene.models.primitives.Plane;
 import scene.models.primitives.Sphere;
 import cameras.PerspectiveCamera;
+import raytracer.IntegratorType;
 import raytracer.Raytracer;
+import raytracer.sampling.SamplerType;
+import scene.acceleration.KernelType;
+import ui.FramebufferTarget;
+import ui.RenderTarget;
 import ui.Window;
 import scene.Scene;
 import utils.RgbColor;
@@ -13,6 +19,8 @@ import utils.algebra.Vec2;
 import utils.algebra.Vec3;
 import utils.io.DataImporter;
 
+import java.awt.GraphicsEnvironment;
+
 /*
     - THE RAYTRACER -
 
@@ -42,6 +50,23 @@ public class Main {
     static final int ANTI_ALIASING = 2;
     static final float ANTI_ALIASING_FILTER_WIDTH = 1.2f;
 
+    //stop sampling tiles once their noise is below this value, 0 disables adaptive sampling
+    static final float ADAPTIVE_THRESHOLD = 0;
+
+    //RANDOM, STRATIFIED, HALTON, SOBOL or BLUE_NOISE
+    static final SamplerType SAMPLER = SamplerType.RANDOM;
+
+    //kernels of the scene tree and the triangle models, SIMD tests packets of boxes and triangles with the
+    //Vector API and falls back to SCALAR without the module
+    static final KernelType KERNEL_TYPE = KernelType.SIMD;
+
+    //trace the camera rays of 8x8 pixel blocks as packets, the image is the same as with single rays
+    static final boolean PACKET_TRACING = false;
+
+    //directory for binary copies of imported OBJ files and their trees, a later start loads them instead of parsing.
+    //null keeps the cache off, e.g. "cache" to turn it on
+    static final String MESH_CACHE_DIRECTORY = null;
+
     static final boolean USE_SOFT_SHADOWS = false;
 
     /** LIGHT **/
@@ -52,8 +77,13 @@ public class Main {
 
     static final Vec3 LIGHT_POSITION = new Vec3(0f, 1.99f, 0f);
     static final float AREA_LIGHT_SIZE = 1.24f;
+    //radiance of the area light relative to its color, only used by physically based rendering
+    static final float AREA_LIGHT_EMISSION = 8f;
 
     /** GI **/
+    //WHITTED follows every lobe GI_SAMPLES times, PATH_TRACING follows one lobe per bounce,
+    //PATH_TRACING_MIS is physically based and samples the lights at every bounce
+    static final IntegratorType INTEGRATOR = IntegratorType.WHITTED;
     static final boolean USE_GI = true;
     static final int GI_LEVEL = 5;
     static final int GI_SAMPLES = 1;
@@ -73,24 +103,31 @@ public class Main {
 
     static final float VIEW_ANGLE = 39.5978f;
 
-    static final Window renderWindow = new Window(IMAGE_WIDTH, IMAGE_HEIGHT);
-
     /** DEBUG **/
 
     static final boolean SHOW_PARAM_LABEL = false;
 
-    /** Initial method. This is where the show begins. **/
+    /** Initial method. This is where the show begins. Run with "--headless [file]" to render without a window **/
     public static void main(String[] args) {
-        draw(renderWindow);
+        boolean headless = GraphicsEnvironment.isHeadless() || (args.length > 0 && args[0].equals("--headless"));
+        String outputFile = args.length > 1 ? args[1] : "raytracing.png";
+
+        DataImporter.setMeshCacheDirectory(MESH_CACHE_DIRECTORY);
+
+        RenderTarget renderTarget = headless
+                ? new FramebufferTarget(IMAGE_WIDTH, IMAGE_HEIGHT, outputFile)
+                : new Window(IMAGE_WIDTH, IMAGE_HEIGHT);
+
+        draw(renderTarget);
     }
 
     /**  Draw the scene using our Raytracer **/
-    private static void draw(Window renderWindow) {
-        Scene renderScene = new Scene();
+    private static void draw(RenderTarget renderTarget) {
+        Scene renderScene = new Scene(KERNEL_TYPE);
 
         setupScene(renderScene);
 
-        raytraceScene(renderWindow, renderScene);
+        raytraceScene(renderTarget, renderScene);
     }
 
     /** Setup all components that we want to see in our scene **/
@@ -116,7 +153,7 @@ public class Main {
         renderScene.addCamera(new PerspectiveCamera(CAM_POS, LOOK_AT, UP_VECTOR, (float) IMAGE_WIDTH / IMAGE_HEIGHT, VIEW_ANGLE));
 
         renderScene.addLight(new Light(LIGHT_POSITION.sub(new Vec3(0f, 0.05f, 0f)), LIGHT_COLOR, 0.9f, 1f));
-        renderScene.addObject(new Plane(new Transform(LIGHT_POSITION), new Vec3(0, -1, 0), new Vec2(AREA_LIGHT_SIZE / 2, AREA_LIGHT_SIZE /2), new UnlitMaterial(LIGHT_COLOR)));
+        renderScene.addObject(new Plane(new Transform(LIGHT_POSITION), new Vec3(0, -1, 0), new Vec2(AREA_LIGHT_SIZE / 2, AREA_LIGHT_SIZE /2), new UnlitMaterial(LIGHT_COLOR, AREA_LIGHT_EMISSION)));
 
         Material white = new ReflectiveMaterial(RgbColor.WHITE, RgbColor.WHITE, AMBIENT_LIGHT, 32f, 1f, false);
         Material yellow = new ReflectiveMaterial(RgbColor.YELLOW, RgbColor.WHITE, AMBIENT_LIGHT, 32f, 1f, false);
@@ -150,14 +187,21 @@ public class Main {
 
         renderScene.addObject(new Sphere(new Transform(new Vec3(-0.75f, 0, -0.5f), new Vec3(45 , 0, 45), new Vec3(1, 1, 2)), 0.5f, white));
 
-        //renderScene.addObject(new TriangleModel(DataImporter.loadObjFile("assets/teapot.obj", new Transform(new Vec3(0, -2, 0), new Vec3(0 ,0, 0), new Vec3(0.5f, 0.5f, 0.5f)), metallic)));
+        //renderScene.addObject(new TriangleModel(DataImporter.loadObjFile("assets/teapot.obj", new Transform(new Vec3(0, -2, 0), new Vec3(0 ,0, 0), new Vec3(0.5f, 0.5f, 0.5f)), metallic), KERNEL_TYPE));
+
+        //TriangleModel teapot = DataImporter.loadObjModel("assets/teapot.obj", metallic, AMBIENT_LIGHT, KERNEL_TYPE);
+        //renderScene.addObject(new MeshInstance(teapot, new Transform(new Vec3(-1, -2, 0), new Vec3(0 ,0, 0), new Vec3(0.3f, 0.3f, 0.3f))));
+        //renderScene.addObject(new MeshInstance(teapot, new Transform(new Vec3(1, -2, 0), new Vec3(0 ,90, 0), new Vec3(0.3f, 0.3f, 0.3f))));
+
+        //materials and light of the box come from its MTL file
+        //renderScene.addObject(new TriangleModel(DataImporter.loadObjFile("assets/CornellBox-Original.obj", new Transform(new Vec3(0, -3, 0), new Vec3(0, 0, 0), new Vec3(3, 3, 3)), white, AMBIENT_LIGHT), KERNEL_TYPE));
     }
 
     /** Create our personal renderer and give it all of our items and prefs to calculate our scene **/
-    private static void raytraceScene(Window renderWindow, Scene renderScene) {
+    private static void raytraceScene(RenderTarget renderTarget, Scene renderScene) {
         Raytracer raytracer = new Raytracer(
                 renderScene,
-                renderWindow,
+                renderTarget,
                 NUMBER_OF_SAMPLES,
                 BACKGROUND_COLOR,
                 AMBIENT_LIGHT,
@@ -174,6 +218,10 @@ public class Main {
                 LIGHT_DENSITY,
                 SHOW_PARAM_LABEL);
 
+        raytracer.setIntegrator(INTEGRATOR);
+        raytracer.setSampler(SAMPLER);
+        raytracer.setAdaptiveSampling(ADAPTIVE_THRESHOLD);
+        raytracer.setPacketTracing(PACKET_TRACING);
         raytracer.renderScene();
     }
 }
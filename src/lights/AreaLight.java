@@ -0,0 +1,60 @@
+package lights;
+
+import scene.models.primitives.Plane;
+import utils.RgbColor;
+import utils.algebra.Vec2;
+import utils.algebra.Vec3;
+
+/*
+    Plane with an emissive material, it emits on the side its normal points to
+ */
+public class AreaLight implements Emitter {
+    private final Plane plane;
+    private final Vec3 normal;
+    private final RgbColor radiance;
+
+    public AreaLight(Plane plane) {
+        this.plane = plane;
+        this.normal = plane.getNormal();
+        this.radiance = plane.getMaterial().getEmission();
+    }
+
+    public Plane getPlane() {
+        return this.plane;
+    }
+
+    @Override
+    public boolean sample(Vec3 position, Vec2 u, EmitterSample out) {
+        Vec3 direction = plane.samplePoint(u.x, u.y, out.direction).subInPlace(position);
+        float distanceSquared = direction.scalar(direction);
+        float distance = (float) Math.sqrt(distanceSquared);
+        direction.multScalarInPlace(1f / distance);
+
+        float cosLight = -normal.scalar(direction);
+        if (cosLight <= 0)
+            return false;
+
+        out.distance = distance;
+        out.radiance.set(radiance);
+        out.pdf = distanceSquared / (cosLight * plane.getArea());
+        return true;
+    }
+
+    /**
+     The normal of the plane is known, the one of the hit is not needed
+     **/
+    @Override
+    public float pdf(Vec3 position, Vec3 point, Vec3 normal) {
+        Vec3 direction = new Vec3().setSub(point, position);
+        float distanceSquared = direction.scalar(direction);
+        float cosLight = -normal.scalar(direction) / (float) Math.sqrt(distanceSquared);
+        if (cosLight <= 0)
+            return 0;
+        return distanceSquared / (cosLight * plane.getArea());
+    }
+
+    @Override
+    public boolean isHittable() {
+        return true;
+    }
+}
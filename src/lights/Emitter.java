@@ -0,0 +1,28 @@
+package lights;
+
+import utils.algebra.Vec2;
+import utils.algebra.Vec3;
+
+/*
+    Anything that can be sampled for next-event estimation
+ */
+public interface Emitter {
+
+    /**
+     Sample a point of the emitter as seen from the given position, false if it cannot light the position
+     **/
+    boolean sample(Vec3 position, Vec2 u, EmitterSample out);
+
+    /**
+     Emitter is also part of the scene geometry, so paths can find it by chance as well
+     **/
+    boolean isHittable();
+
+    /**
+     Probability density per solid angle with which sample picks the given point of the emitter with the given normal,
+     as seen from the position. Emitters that cannot be hit are never asked
+     **/
+    default float pdf(Vec3 position, Vec3 point, Vec3 normal) {
+        return 0;
+    }
+}
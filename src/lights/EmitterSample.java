@@ -0,0 +1,16 @@
+package lights;
+
+import utils.RgbColor;
+import utils.algebra.Vec3;
+
+/*
+    Result of sampling an emitter, reused for every sample of a path
+ */
+public class EmitterSample {
+    //unit direction from the shading point towards the sampled point
+    public final Vec3 direction = new Vec3();
+    public float distance;
+    public final RgbColor radiance = new RgbColor(0, 0, 0);
+    //probability density per solid angle of the direction
+    public float pdf;
+}
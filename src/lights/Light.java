@@ -1,9 +1,16 @@
 package lights;
 
+import raytracer.ray.RayUtils;
 import utils.RgbColor;
+import utils.algebra.Vec2;
 import utils.algebra.Vec3;
 
-public class Light {
+/*
+    Spherical light that is not part of the scene geometry. Its intensity is the radiant
+    intensity of the whole sphere, so the surface radiance is intensity / (PI radius²).
+    A light without radius is a point light.
+ */
+public class Light implements Emitter {
     private final Vec3 position;
     private final RgbColor color;
     private final float intensity;
@@ -32,5 +39,63 @@ public class Light {
     public float getRadius() {
         return radius;
     }
-}
 
+    @Override
+    public boolean sample(Vec3 point, Vec2 u, EmitterSample out) {
+        Vec3 toCenter = out.direction.setSub(position, point);
+        float distanceSquared = toCenter.scalar(toCenter);
+        float distance = (float) Math.sqrt(distanceSquared);
+        if (distance == 0)
+            return false;
+
+        //point light, the radiance already holds the falloff so the pdf of its single direction is one
+        if (radius <= 0) {
+            toCenter.multScalarInPlace(1f / distance);
+            out.distance = distance;
+            out.radiance.set(color).multScalarInPlace(intensity / distanceSquared);
+            out.pdf = 1;
+            return true;
+        }
+
+        out.radiance.set(color).multScalarInPlace(intensity / ((float) Math.PI * radius * radius));
+
+        //inside the sphere every point of it is visible, sample its surface uniformly
+        if (distance <= radius) {
+            float z = 1 - 2 * u.x;
+            Vec3 surfaceNormal = RayUtils.directionAround(new Vec3(0, 0, 1), z, u.y * (float) (2 * Math.PI));
+            Vec3 direction = out.direction.set(position).addScaledInPlace(surfaceNormal, radius).subInPlace(point);
+            float surfaceDistanceSquared = direction.scalar(direction);
+            float surfaceDistance = (float) Math.sqrt(surfaceDistanceSquared);
+            direction.multScalarInPlace(1f / surfaceDistance);
+
+            float cosLight = Math.abs(surfaceNormal.scalar(direction));
+            if (cosLight <= 0)
+                return false;
+
+            out.distance = surfaceDistance;
+            out.pdf = surfaceDistanceSquared / (cosLight * 4 * (float) Math.PI * radius * radius);
+            return true;
+        }
+
+        //outside sample the cone of directions the sphere covers uniformly
+        double sinThetaMaxSquared = (double) radius * radius / distanceSquared;
+        double oneMinusCosThetaMax = sinThetaMaxSquared / (1 + Math.sqrt(1 - sinThetaMaxSquared));
+        float cosTheta = (float) (1 - u.x * oneMinusCosThetaMax);
+
+        Vec3 axis = toCenter.multScalarInPlace(1f / distance);
+        Vec3 direction = RayUtils.directionAround(axis, cosTheta, u.y * (float) (2 * Math.PI));
+
+        //first intersection of the direction with the sphere
+        float b = direction.scalar(axis) * distance;
+        float discriminant = b * b - (distanceSquared - radius * radius);
+        out.distance = b - (float) Math.sqrt(Math.max(0f, discriminant));
+        out.direction.set(direction);
+        out.pdf = (float) (1 / (2 * Math.PI * oneMinusCosThetaMax));
+        return true;
+    }
+
+    @Override
+    public boolean isHittable() {
+        return false;
+    }
+}
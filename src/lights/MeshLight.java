@@ -0,0 +1,157 @@
+package lights;
+
+import scene.models.TriangleMesh;
+import utils.RgbColor;
+import utils.algebra.Vec2;
+import utils.algebra.Vec3;
+
+/*
+    The triangles of a mesh with an emissive material as one emitter.
+
+    A triangle is picked with a probability following its area, so every point of the emissive
+    surface is equally likely. Each triangle emits the emission of its material on the side its
+    vertex normals point to, like a hit of it does.
+ */
+public class MeshLight implements Emitter {
+    //3 corners of 3 floats per emissive triangle
+    private final float[] corners;
+    //unit face normal per emissive triangle, on the side of its vertex normals
+    private final float[] normals;
+    private final RgbColor[] radiances;
+    //area of the emissive triangles up to and including each one
+    private final float[] cumulativeAreas;
+    private final int triangleCount;
+    private final float area;
+
+    public MeshLight(TriangleMesh mesh) {
+        float[] positions = mesh.getPositions();
+        float[] vertexNormals = mesh.getNormals();
+        int[] positionIndices = mesh.getPositionIndices();
+        int[] normalIndices = mesh.getNormalIndices();
+
+        int emissive = 0;
+        for (int t = 0; t < mesh.getTriangleCount(); t++) {
+            if (!mesh.getMaterial(t).getEmission().isBlack())
+                emissive++;
+        }
+
+        corners = new float[emissive * 9];
+        normals = new float[emissive * 3];
+        radiances = new RgbColor[emissive];
+        cumulativeAreas = new float[emissive];
+
+        Vec3 edge1 = new Vec3();
+        Vec3 edge2 = new Vec3();
+        Vec3 normal = new Vec3();
+        int count = 0;
+        float sum = 0;
+        for (int t = 0; t < mesh.getTriangleCount(); t++) {
+            RgbColor emission = mesh.getMaterial(t).getEmission();
+            if (emission.isBlack())
+                continue;
+
+            int p0 = positionIndices[t * 3] * 3, p1 = positionIndices[t * 3 + 1] * 3, p2 = positionIndices[t * 3 + 2] * 3;
+            edge1.set(positions[p1] - positions[p0], positions[p1 + 1] - positions[p0 + 1], positions[p1 + 2] - positions[p0 + 2]);
+            edge2.set(positions[p2] - positions[p0], positions[p2 + 1] - positions[p0 + 1], positions[p2 + 2] - positions[p0 + 2]);
+            normal.setCross(edge1, edge2);
+            float doubleArea = normal.length();
+            //degenerate triangles cannot be sampled
+            if (doubleArea == 0)
+                continue;
+            normal.multScalarInPlace(1f / doubleArea);
+
+            float side = 0;
+            for (int i = 0; i < 3; i++) {
+                int n = normalIndices[t * 3 + i] * 3;
+                side += normal.x * vertexNormals[n] + normal.y * vertexNormals[n + 1] + normal.z * vertexNormals[n + 2];
+            }
+            if (side < 0)
+                normal.negateInPlace();
+
+            for (int i = 0; i < 3; i++) {
+                int p = positionIndices[t * 3 + i] * 3;
+                System.arraycopy(positions, p, corners, count * 9 + i * 3, 3);
+            }
+            normals[count * 3] = normal.x;
+            normals[count * 3 + 1] = normal.y;
+            normals[count * 3 + 2] = normal.z;
+            radiances[count] = emission;
+            sum += doubleArea / 2;
+            cumulativeAreas[count] = sum;
+            count++;
+        }
+
+        this.triangleCount = count;
+        this.area = sum;
+    }
+
+    /**
+     Number of emissive triangles that can be sampled, a mesh without any is no emitter
+     **/
+    public int getTriangleCount() {
+        return triangleCount;
+    }
+
+    @Override
+    public boolean sample(Vec3 position, Vec2 u, EmitterSample out) {
+        //pick the triangle by the area below it and reuse what is left of u.x within the triangle
+        float target = u.x * area;
+        int low = 0, high = triangleCount - 1;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (cumulativeAreas[middle] <= target)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        int triangle = low;
+        float below = triangle == 0 ? 0 : cumulativeAreas[triangle - 1];
+        float s = Math.min((target - below) / (cumulativeAreas[triangle] - below), 1);
+
+        //uniform point of the triangle
+        float root = (float) Math.sqrt(Math.max(s, 0));
+        float w0 = 1 - root;
+        float w1 = root * (1 - u.y);
+        float w2 = root * u.y;
+        int c = triangle * 9;
+        Vec3 direction = out.direction.set(
+                corners[c] * w0 + corners[c + 3] * w1 + corners[c + 6] * w2,
+                corners[c + 1] * w0 + corners[c + 4] * w1 + corners[c + 7] * w2,
+                corners[c + 2] * w0 + corners[c + 5] * w1 + corners[c + 8] * w2
+        ).subInPlace(position);
+
+        float distanceSquared = direction.scalar(direction);
+        float distance = (float) Math.sqrt(distanceSquared);
+        if (distance == 0)
+            return false;
+        direction.multScalarInPlace(1f / distance);
+
+        int n = triangle * 3;
+        float cosLight = -(normals[n] * direction.x + normals[n + 1] * direction.y + normals[n + 2] * direction.z);
+        if (cosLight <= 0)
+            return false;
+
+        out.distance = distance;
+        out.radiance.set(radiances[triangle]);
+        out.pdf = distanceSquared / (cosLight * area);
+        return true;
+    }
+
+    /**
+     The normal of a hit is its interpolated one, which is the face normal for flat shaded emitters
+     **/
+    @Override
+    public float pdf(Vec3 position, Vec3 point, Vec3 normal) {
+        Vec3 direction = new Vec3().setSub(point, position);
+        float distanceSquared = direction.scalar(direction);
+        float cosLight = -normal.scalar(direction) / (float) Math.sqrt(distanceSquared);
+        if (cosLight <= 0)
+            return 0;
+        return distanceSquared / (cosLight * area);
+    }
+
+    @Override
+    public boolean isHittable() {
+        return true;
+    }
+}
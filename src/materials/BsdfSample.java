@@ -0,0 +1,10 @@
+package materials;
+
+import utils.RgbColor;
+import utils.algebra.Vec3;
+
+/*
+    Direction a path continues in. The weight is bsdf * cos / pdf, the factor the path
+    throughput is multiplied with. Specular samples have no meaningful pdf.
+ */
+public record BsdfSample(Vec3 direction, RgbColor weight, float pdf, boolean specular) {}
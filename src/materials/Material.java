@@ -3,13 +3,15 @@ package materials;
 import lights.Light;
 import raytracer.ray.Intersection;
 import raytracer.ray.Ray;
+import raytracer.sampling.Sampler;
 import utils.RgbColor;
+import utils.algebra.Vec3;
 
 import java.util.List;
 
 public interface Material {
     RgbColor getDirectLighting(Intersection intersection, Ray ray, List<Light> lights);
-    Ray reflect(Intersection intersection, Ray ray);
+    Ray reflect(Intersection intersection, Ray ray, Sampler sampler);
 
     default Ray refract(Intersection intersection, Ray ray) {
         // Default implementation returns null, as not all materials will support refraction
@@ -28,5 +30,52 @@ public interface Material {
         return 1f;
     }
 
+    /**
+     Color the light that bounces off the surface is multiplied with, used as path throughput
+     **/
+    default RgbColor getReflectance() {
+        return RgbColor.WHITE;
+    }
+
+    /**
+     Radiance the surface emits on the side its normal points to
+     **/
+    default RgbColor getEmission() {
+        return RgbColor.BLACK;
+    }
+
+    /*
+        Physically based scattering used by path tracing with light sampling. All directions
+        point away from the surface, wo towards the viewer and wi towards the light.
+     */
+
+    /**
+     Sample the direction the path continues in, null if the path ends here
+     **/
+    default BsdfSample sampleBsdf(Intersection intersection, Vec3 wo, Sampler sampler) {
+        return null;
+    }
+
+    /**
+     Get bsdf times cosine of the light direction, the part of the light from wi that leaves along wo
+     **/
+    default RgbColor evalBsdf(Intersection intersection, Vec3 wo, Vec3 wi, RgbColor out) {
+        return out.set(0, 0, 0);
+    }
+
+    /**
+     Get probability density per solid angle with which sampleBsdf picks wi
+     **/
+    default float pdfBsdf(Intersection intersection, Vec3 wo, Vec3 wi) {
+        return 0;
+    }
+
+    /**
+     Material only scatters into single directions, sampling lights cannot help it
+     **/
+    default boolean isSpecular() {
+        return false;
+    }
+
 
 }
\ No newline at end of file
@@ -3,13 +3,17 @@ package materials;
 import lights.Light;
 import raytracer.ray.Intersection;
 import raytracer.ray.Ray;
+import raytracer.sampling.Sampler;
 import raytracer.ray.RayUtils;
 import utils.RgbColor;
+import utils.algebra.Vec2;
 import utils.algebra.Vec3;
 
 import java.util.List;
 
 import static raytracer.ray.RayUtils.RAY_EPSYLON;
+import static raytracer.ray.RayUtils.cosineSampleHemisphere;
+import static raytracer.ray.RayUtils.directionAround;
 import static raytracer.ray.RayUtils.randomInHemisphere;
 
 public class ReflectiveMaterial implements Material {
@@ -50,6 +54,13 @@ public class ReflectiveMaterial implements Material {
         return diffuse;
     }
 
+    @Override
+    public RgbColor getReflectance() {
+        if(metallic)
+            return specular;
+        return diffuse;
+    }
+
     @Override
     public RgbColor getDirectLighting(Intersection intersection, Ray ray, List<Light> lights) {
 
@@ -62,10 +73,14 @@ public class ReflectiveMaterial implements Material {
 
         RgbColor accumulatedColor = ambient.multRGB(diffuse);
 
+        //reused for every light
+        Vec3 L = new Vec3();
+        RgbColor lightColor = new RgbColor(0, 0, 0);
+
         for (Light light : lights) {
-            Vec3 L = light.getPosition().sub(position);
+            L.setSub(light.getPosition(), position);
             float distance = L.length();
-            L = L.normalize();
+            L.multScalarInPlace(1f / distance);
             float intensity = light.getIntensity() / (distance); // Inverse Square Law
 
             // Diffuse component (Lambertian reflection)
@@ -73,17 +88,17 @@ public class ReflectiveMaterial implements Material {
             if(NdotL < 0f)
                 continue;
 
-            RgbColor diffuseComponent = diffuse.multScalar(NdotL);
-
             //Phong reflection
-            //reflection vector R
-            Vec3 R = RayUtils.reflect(L, normal);  //Reflect light direction L about normal N
-            float RdotV = R.scalar(V);   //Dot product between reflection vector and view direction
+            //reflection vector R = L - 2 (L.N) N, only its dot product with the view direction is needed
+            float RdotV = L.scalar(V) - 2 * NdotL * normal.scalar(V);   //Dot product between reflection vector and view direction
             float kS = Math.max(0, RdotV);  //Ensure the dot product is non-negative
             kS = (float) Math.pow(kS, shininess);  //Apply shininess exponent
-            RgbColor specularComponent = specular.multScalar(kS);
 
-            accumulatedColor = accumulatedColor.add(diffuseComponent.add(specularComponent).multRGB(light.getColor()).multScalar(intensity));
+            lightColor.set(diffuse)
+                    .multScalarInPlace(NdotL)
+                    .addScaledInPlace(specular, kS)
+                    .multRGBInPlace(light.getColor());
+            accumulatedColor.addScaledInPlace(lightColor, intensity);
         }
 
         return accumulatedColor;
@@ -92,19 +107,85 @@ public class ReflectiveMaterial implements Material {
 
 
     @Override
-    public Ray reflect(Intersection intersection, Ray ray) {
+    public Ray reflect(Intersection intersection, Ray ray, Sampler sampler) {
         Vec3 position = intersection.position();
         Vec3 normal = intersection.normal();
         Vec3 viewDir = ray.direction();
 
         Vec3 reflected = RayUtils.reflect(viewDir, normal);
 
-        Vec3 randomDirection = randomInHemisphere(normal);
+        Vec3 randomDirection = randomInHemisphere(normal, sampler);
 
         //blend the reflected direction with a random direction in the hemisphere
-        Vec3 finalDirection = reflected.multScalar(1.0f - roughness).add(randomDirection.multScalar(roughness));
+        Vec3 finalDirection = reflected.multScalarInPlace(1.0f - roughness).addScaledInPlace(randomDirection, roughness);
 
-        Vec3 offsetPosition = position.add(normal.multScalar(RAY_EPSYLON));
+        Vec3 offsetPosition = new Vec3(position).addScaledInPlace(normal, RAY_EPSYLON);
         return new Ray(offsetPosition, finalDirection);
     }
+
+    /*
+        Physically based the material is a lambertian diffuse surface, or a normalized
+        phong lobe around the mirror direction with the shininess as exponent if it is metallic
+     */
+
+    @Override
+    public BsdfSample sampleBsdf(Intersection intersection, Vec3 wo, Sampler sampler) {
+        Vec3 normal = facingNormal(intersection, wo);
+        Vec2 u = sampler.get2D(new Vec2());
+
+        if (!metallic) {
+            Vec3 wi = cosineSampleHemisphere(normal, u);
+            float cosI = normal.scalar(wi);
+            if (cosI <= 0)
+                return null;
+
+            //bsdf * cos / pdf of the cosine-weighted direction is the diffuse color itself
+            return new BsdfSample(wi, diffuse, cosI / (float) Math.PI, false);
+        }
+
+        Vec3 mirror = RayUtils.reflect(wo.negate(), normal);
+        float cosAlpha = (float) Math.pow(u.y, 1 / (shininess + 1));
+        Vec3 wi = directionAround(mirror, cosAlpha, u.x * (float) (2 * Math.PI));
+        float cosI = normal.scalar(wi);
+        if (cosI <= 0)
+            return null;
+
+        float pdf = (shininess + 1) / (float) (2 * Math.PI) * (float) Math.pow(cosAlpha, shininess);
+        return new BsdfSample(wi, specular.multScalar((shininess + 2) / (shininess + 1) * cosI), pdf, false);
+    }
+
+    @Override
+    public RgbColor evalBsdf(Intersection intersection, Vec3 wo, Vec3 wi, RgbColor out) {
+        Vec3 normal = facingNormal(intersection, wo);
+        float cosI = normal.scalar(wi);
+        if (cosI <= 0)
+            return out.set(0, 0, 0);
+
+        if (!metallic)
+            return out.set(diffuse).multScalarInPlace(cosI / (float) Math.PI);
+
+        float cosAlpha = Math.max(0, RayUtils.reflect(wo.negate(), normal).scalar(wi));
+        float phong = (shininess + 2) / (float) (2 * Math.PI) * (float) Math.pow(cosAlpha, shininess);
+        return out.set(specular).multScalarInPlace(phong * cosI);
+    }
+
+    @Override
+    public float pdfBsdf(Intersection intersection, Vec3 wo, Vec3 wi) {
+        Vec3 normal = facingNormal(intersection, wo);
+        float cosI = normal.scalar(wi);
+        if (cosI <= 0)
+            return 0;
+
+        if (!metallic)
+            return cosI / (float) Math.PI;
+
+        float cosAlpha = Math.max(0, RayUtils.reflect(wo.negate(), normal).scalar(wi));
+        return (shininess + 1) / (float) (2 * Math.PI) * (float) Math.pow(cosAlpha, shininess);
+    }
+
+    //planes are hit from both sides, shade the side the viewer is on
+    private static Vec3 facingNormal(Intersection intersection, Vec3 wo) {
+        Vec3 normal = intersection.normal();
+        return normal.scalar(wo) < 0 ? normal.negate() : normal;
+    }
 }
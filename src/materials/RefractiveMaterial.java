@@ -3,6 +3,7 @@ package materials;
 import lights.Light;
 import raytracer.ray.Intersection;
 import raytracer.ray.Ray;
+import raytracer.sampling.Sampler;
 import raytracer.ray.RayUtils;
 import utils.RgbColor;
 import utils.algebra.Vec3;
@@ -25,7 +26,7 @@ public class RefractiveMaterial implements Material {
     }
 
     @Override
-    public Ray reflect(Intersection intersection, Ray ray) {
+    public Ray reflect(Intersection intersection, Ray ray, Sampler sampler) {
         return null; // TODO
     }
 
@@ -62,4 +63,50 @@ public class RefractiveMaterial implements Material {
             return new Ray(intersection.position(), refracted.normalize());
         }
     }
+
+    /**
+     Reflect or refract with the probability of the fresnel reflectance of the dielectric
+     **/
+    @Override
+    public BsdfSample sampleBsdf(Intersection intersection, Vec3 wo, Sampler sampler) {
+        Vec3 N = intersection.normal();
+        float cosI = N.scalar(wo);
+
+        float etaI = 1.0f;
+        float etaT = ior;
+
+        //wo inside the material
+        if (cosI < 0) {
+            N = N.negate();
+            cosI = -cosI;
+            etaI = ior;
+            etaT = 1.0f;
+        }
+
+        float eta = etaI / etaT;
+        float sin2T = eta * eta * (1.0f - cosI * cosI);
+
+        float reflectance = 1;
+        float cosT = 0;
+        if (sin2T < 1) {
+            cosT = (float) Math.sqrt(1 - sin2T);
+            float rParallel = (etaT * cosI - etaI * cosT) / (etaT * cosI + etaI * cosT);
+            float rPerpendicular = (etaI * cosI - etaT * cosT) / (etaI * cosI + etaT * cosT);
+            reflectance = (rParallel * rParallel + rPerpendicular * rPerpendicular) / 2;
+        }
+
+        Vec3 wi;
+        if (sampler.get1D() < reflectance)
+            wi = N.multScalar(2 * cosI).subInPlace(wo);
+        else
+            wi = wo.multScalar(-eta).addScaledInPlace(N, eta * cosI - cosT).normalizeInPlace();
+
+        //the pick probability cancels the fresnel term
+        return new BsdfSample(wi, RgbColor.WHITE, 1, true);
+    }
+
+    @Override
+    public boolean isSpecular() {
+        return true;
+    }
 }
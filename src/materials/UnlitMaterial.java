@@ -3,15 +3,30 @@ package materials;
 import lights.Light;
 import raytracer.ray.Intersection;
 import raytracer.ray.Ray;
+import raytracer.sampling.Sampler;
 import utils.RgbColor;
 
 import java.util.List;
 
 public class UnlitMaterial implements Material {
     private final RgbColor albedo;
+    private final RgbColor emission;
 
     public UnlitMaterial(RgbColor color) {
+        this(color, 1f);
+    }
+
+    /**
+     Unlit material that also lights the scene in physically based rendering, the emitted radiance is color times intensity
+     **/
+    public UnlitMaterial(RgbColor color, float intensity) {
         this.albedo = color;
+        this.emission = color.multScalar(intensity);
+    }
+
+    @Override
+    public RgbColor getEmission() {
+        return emission;
     }
 
     @Override
@@ -25,7 +40,7 @@ public class UnlitMaterial implements Material {
     }
 
     @Override
-    public Ray reflect(Intersection intersection, Ray ray) {
+    public Ray reflect(Intersection intersection, Ray ray, Sampler sampler) {
         return null;
     }
 }
\ No newline at end of file
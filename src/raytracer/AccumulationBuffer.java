@@ -0,0 +1,118 @@
+package raytracer;
+
+import utils.RgbColor;
+
+import java.util.Arrays;
+
+/*
+    HDR image of a running render. Every pixel stores the sum of its samples and
+    how many samples were taken, both in flat primitive arrays so accumulating a
+    sample never allocates. The final color is only computed when it is resolved.
+
+    Next to the sums the running variance of the pixel luminance is tracked with
+    Welford's algorithm, every add counts as one observation. It tells how noisy
+    the average of a pixel still is, which drives adaptive sampling. The luminance
+    is clamped to the displayable range first, noise above white is never visible.
+ */
+public class AccumulationBuffer {
+
+    private final int mWidth;
+    private final int mHeight;
+
+    //interleaved red, green and blue sums
+    private final float[] mSums;
+    private final int[] mCounts;
+
+    //welford state of the luminance per pixel
+    private final float[] mMeans;
+    private final float[] mM2s;
+    private final int[] mObservations;
+
+    public AccumulationBuffer(int width, int height){
+        mWidth = width;
+        mHeight = height;
+
+        mSums = new float[width * height * 3];
+        mCounts = new int[width * height];
+
+        mMeans = new float[width * height];
+        mM2s = new float[width * height];
+        mObservations = new int[width * height];
+    }
+
+    public int getWidth(){
+        return mWidth;
+    }
+
+    public int getHeight(){
+        return mHeight;
+    }
+
+    /**
+     Add the sum of some samples to a pixel
+     **/
+    public void add(int x, int y, float red, float green, float blue, int samples){
+        int index = y * mWidth + x;
+        int offset = index * 3;
+        mSums[offset] += red;
+        mSums[offset + 1] += green;
+        mSums[offset + 2] += blue;
+        mCounts[index] += samples;
+
+        //one observation is the average of the added samples
+        float luminance = Math.min((0.2126f * red + 0.7152f * green + 0.0722f * blue) / samples, 1f);
+        int n = ++mObservations[index];
+        float delta = luminance - mMeans[index];
+        mMeans[index] += delta / n;
+        mM2s[index] += delta * (luminance - mMeans[index]);
+    }
+
+    /**
+     Add the sum of some samples to a pixel
+     **/
+    public void add(int x, int y, RgbColor color, int samples){
+        add(x, y, color.red(), color.green(), color.blue(), samples);
+    }
+
+    public int getSampleCount(int x, int y){
+        return mCounts[y * mWidth + x];
+    }
+
+    /**
+     Get the standard error of the mean luminance, infinite as long as there are less than two observations
+     **/
+    public float getStandardError(int x, int y){
+        int index = y * mWidth + x;
+        int n = mObservations[index];
+        if (n < 2)
+            return Float.POSITIVE_INFINITY;
+
+        float variance = mM2s[index] / (n - 1);
+        return (float) Math.sqrt(variance / n);
+    }
+
+    /**
+     Get the average of all samples of a pixel, black if it has none yet
+     **/
+    public RgbColor get(int x, int y, RgbColor out){
+        int index = y * mWidth + x;
+        int count = mCounts[index];
+        if (count == 0)
+            return out.set(0, 0, 0);
+
+        int offset = index * 3;
+        float weight = 1f / count;
+        return out.set(mSums[offset] * weight, mSums[offset + 1] * weight, mSums[offset + 2] * weight);
+    }
+
+    /**
+     Forget all samples
+     **/
+    public void clear(){
+        Arrays.fill(mSums, 0f);
+        Arrays.fill(mCounts, 0);
+        Arrays.fill(mMeans, 0f);
+        Arrays.fill(mM2s, 0f);
+        Arrays.fill(mObservations, 0);
+    }
+}
@@ -0,0 +1,13 @@
+package raytracer;
+
+/*
+    How the renderer estimates the light arriving along a camera ray, selected with Raytracer.setIntegrator
+ */
+public enum IntegratorType {
+    //recursive, every bounce follows all lobes of the material GI_SAMPLES times
+    WHITTED,
+    //iterative, every bounce follows one randomly picked lobe and paths end by russian roulette
+    PATH_TRACING,
+    //physically based path tracing, every bounce samples a light and weights it against the bsdf sample by MIS
+    PATH_TRACING_MIS
+}
@@ -18,32 +18,41 @@ package raytracer;
 
 import cameras.Camera;
 import cameras.PerspectiveCamera;
+import lights.Emitter;
+import lights.EmitterSample;
 import lights.Light;
+import materials.BsdfSample;
 import materials.Material;
 import materials.UnlitMaterial;
 import scene.models.Transform;
 import scene.models.primitives.Sphere;
 import raytracer.ray.Intersection;
 import raytracer.ray.Ray;
+import raytracer.ray.RayPacket;
+import raytracer.sampling.Sampler;
+import raytracer.sampling.SamplerType;
 import scene.Scene;
-import ui.Window;
+import scene.models.Hittable;
+import scene.models.SceneObject;
+import ui.RenderTarget;
 import utils.*;
+import utils.algebra.Vec2;
 import utils.algebra.Vec3;
 import utils.io.Log;
 
-import java.awt.image.BufferedImage;
-import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.*;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static raytracer.ray.RayUtils.*;
 
 public class Raytracer {
 
-    private BufferedImage mBufferedImage;
-
     private Scene mScene;
-    private Window mRenderWindow;
+    private Hittable mSceneHittable;
+    private RenderTarget mRenderTarget;
 
     private int mMaxNumSamples;
 
@@ -73,14 +82,52 @@ public class Raytracer {
 
     private int mLightDensity;
 
+    //all random numbers of a render derive from this seed, the same seed gives the same image
+    private long mSeed = 0;
+    private SamplerType mSamplerType = SamplerType.RANDOM;
+    private IntegratorType mIntegrator = IntegratorType.WHITTED;
+
+    //resolve the image through the ACES curve instead of clamping it
+    private boolean mToneMapping = false;
+
+    //camera rays are traced in packets of PACKET_SIZE x PACKET_SIZE pixels instead of one by one
+    private boolean mPacketTracing = false;
+
+    //tiles stop once the standard error of their pixels is below this threshold, zero samples every tile fully
+    private float mAdaptiveThreshold = 0;
+
+    //paths may end by russian roulette from this bounce on
+    private static final int RUSSIAN_ROULETTE_DEPTH = 3;
+    //no path survives the roulette for sure, even if its throughput stays high
+    private static final float MAX_SURVIVAL_PROBABILITY = 0.95f;
+
+    private static final int TILE_SIZE = 16;
+    private static final int PACKET_SIZE = 8;
+    private static final long PUBLISH_INTERVAL_MS = 250;
+
+    //adaptive sampling trusts no variance estimate before this many passes
+    private static final int MIN_ADAPTIVE_PASSES = 16;
+    //a noisy tile may take up to this many times the regular passes from the spare budget
+    private static final int MAX_ADAPTIVE_PASS_FACTOR = 4;
+
+    //state of the running render, shared by all tile passes
+    private Camera mCamera;
+    private List<Emitter> mEmitters;
+    private Map<SceneObject, Emitter> mHittableEmitters;
+    private AccumulationBuffer mAccumulation;
+    private CountDownLatch mFinishedTiles;
+    private AtomicLong mFinishedPasses;
+    //passes and final error of every tile, written by the tile when it stops
+    private int[] mTilePasses;
+    private float[] mTileErrors;
+    private volatile int mPublishedPercent = -1;
+
     /**  Constructor **/
 
-    public Raytracer(Scene scene, Window renderWindow, int recursions, RgbColor backColor, RgbColor ambientLight, int antiAliasingSamples, float antiAliasingFilterSize, boolean useGi, int giSamples, int giLlevel, boolean useAo, int aoSamples, float aoDistance, boolean softShadows, int lightSamples, int lightDensity, boolean debugOn){
+    public Raytracer(Scene scene, RenderTarget renderTarget, int recursions, RgbColor backColor, RgbColor ambientLight, int antiAliasingSamples, float antiAliasingFilterSize, boolean useGi, int giSamples, int giLlevel, boolean useAo, int aoSamples, float aoDistance, boolean softShadows, int lightSamples, int lightDensity, boolean debugOn){
         Log.print(this, "Init");
         mMaxNumSamples = recursions;
 
-        mBufferedImage = renderWindow.getBufferedImage();
-
         mAntiAliasingSamples = antiAliasingSamples;
         mAntiAliasingFilterWidth = antiAliasingFilterSize;
         mGiSamples = giSamples;
@@ -96,14 +143,38 @@ public class Raytracer {
         mBackgroundColor = backColor;
         mAmbientLight = ambientLight;
         mScene = scene;
-        mRenderWindow = renderWindow;
+        mRenderTarget = renderTarget;
         mDebug = debugOn;
         tStart = System.currentTimeMillis();
     }
 
-    /**  Send the created window to the frame delivered by JAVA to display our result **/
+    public void setSeed(long seed) {
+        mSeed = seed;
+    }
+
+    public void setSampler(SamplerType samplerType) {
+        mSamplerType = samplerType;
+    }
+
+    public void setIntegrator(IntegratorType integrator) {
+        mIntegrator = integrator;
+    }
+
+    public void setToneMapping(boolean toneMapping) {
+        mToneMapping = toneMapping;
+    }
+
+    public void setAdaptiveSampling(float threshold) {
+        mAdaptiveThreshold = threshold;
+    }
+
+    public void setPacketTracing(boolean packetTracing) {
+        mPacketTracing = packetTracing;
+    }
+
+    /**  Export the rendered image of the render target **/
     public void exportRendering(){
-        mRenderWindow.exportRendering(String.valueOf(stopTime(tStart)), mMaxNumSamples, mAntiAliasingSamples, mDebug);
+        mRenderTarget.exportRendering(String.valueOf(stopTime(tStart)), mMaxNumSamples, mAntiAliasingSamples, mDebug);
     }
 
     /**  Stop time of rendering **/
@@ -121,8 +192,8 @@ public class Raytracer {
 
     private void gradient() {
 
-        int width = mBufferedImage.getWidth();
-        int height = mBufferedImage.getHeight();
+        int width = mRenderTarget.getWidth();
+        int height = mRenderTarget.getHeight();
 
         PerspectiveCamera camera = new PerspectiveCamera(new Vec3(0, 0, 17f), new Vec3(0, 0, 0), new Vec3(0.0f, 1.0f, 0.0f), (float) width / height, 170f);
 
@@ -137,17 +208,18 @@ public class Raytracer {
                 float g = 0.5f * (direction.y + 1.0f);
                 float b = 0.5f * (direction.z + 1.0f);
 
-                mRenderWindow.setPixel(new RgbColor(r, g, b), x, y);
+                mRenderTarget.setPixel(new RgbColor(r, g, b), x, y);
             }
         }
+        mRenderTarget.update();
 
         this.exportRendering();
     }
 
     private void sphere() {
 
-        int width = mBufferedImage.getWidth();
-        int height = mBufferedImage.getHeight();
+        int width = mRenderTarget.getWidth();
+        int height = mRenderTarget.getHeight();
 
         PerspectiveCamera camera = new PerspectiveCamera(new Vec3(0, 0, 4f), new Vec3(0, 0, 0), new Vec3(0.0f, 1.0f, 0.0f), (float) width / height, 70f);
 
@@ -165,9 +237,10 @@ public class Raytracer {
                 if(hit != null)
                     color = RgbColor.GREEN;
 
-                mRenderWindow.setPixel(color, x, y);
+                mRenderTarget.setPixel(color, x, y);
             }
         }
+        mRenderTarget.update();
 
         this.exportRendering();
     }
@@ -175,154 +248,540 @@ public class Raytracer {
     private void raytrace() {
         Log.print(this, "Prepare rendering at " + stopTime(tStart));
 
-        Camera camera = mScene.getCameras().getFirst();
-        int width = mBufferedImage.getWidth();
-        int height = mBufferedImage.getHeight();
+        mCamera = mScene.getCameras().getFirst();
+        mSceneHittable = mScene.getAccelerationStructure();
+        mEmitters = mScene.getEmitters();
+        mHittableEmitters = mScene.getHittableEmitters();
+        int width = mRenderTarget.getWidth();
+        int height = mRenderTarget.getHeight();
+
+        mAccumulation = new AccumulationBuffer(width, height);
 
-        RgbColor[] hdrColors = new RgbColor[width * height];
-        Arrays.fill(hdrColors, RgbColor.BLACK);
+        //set filter width to zero if no AA so we dont offset
+        mAntiAliasingFilterWidth = (mAntiAliasingSamples == 1) ? 0 : mAntiAliasingFilterWidth;
 
-        int numberOfBlocks = 64;
-        ExecutorService executor = Executors.newFixedThreadPool(numberOfBlocks);
+        int tilesX = (width + TILE_SIZE - 1) / TILE_SIZE;
+        int tilesY = (height + TILE_SIZE - 1) / TILE_SIZE;
+        int tileCount = tilesX * tilesY;
 
-        int blocksX = (int) Math.sqrt(numberOfBlocks);
-        int blocksY = numberOfBlocks / blocksX;
-        int blockWidth = (int) Math.ceil((float) width / blocksX);
-        int blockHeight = (int) Math.ceil((float) height / blocksY);
+        mFinishedTiles = new CountDownLatch(tileCount);
+        mFinishedPasses = new AtomicLong(0);
+        mTilePasses = new int[tileCount];
+        mTileErrors = new float[tileCount];
 
-        final AtomicInteger globalSampleCount = new AtomicInteger(0);
+        int threads = Runtime.getRuntime().availableProcessors();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        Log.print(this, "Rendering " + tileCount + " tiles on " + threads + " threads");
+
+        //publish the image in the background, render threads never wait for it
+        ScheduledExecutorService publisher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "render-publisher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long totalPasses = (long) tileCount * mMaxNumSamples;
+        publisher.scheduleAtFixedRate(() -> publishProgress(totalPasses), PUBLISH_INTERVAL_MS, PUBLISH_INTERVAL_MS, TimeUnit.MILLISECONDS);
 
-        CyclicBarrier barrier = new CyclicBarrier(numberOfBlocks, () -> {
-            int currentSample = globalSampleCount.incrementAndGet();
-            Log.print(this, "Sample " + currentSample + "/" + mMaxNumSamples);
+        for (int tile = 0; tile < tileCount; tile++)
+            pool.execute(createTilePass(tile, tilesX, width, height, 0, mMaxNumSamples));
 
-            for (int py = 0; py < height; py++) {
-                int rowOffset = py * height;
-                for (int px = 0; px < width; px++)
-                    mRenderWindow.setPixel(hdrColors[rowOffset + px], px, py);
+        try {
+            mFinishedTiles.await();
+
+            //the passes converged tiles left over go to the noisy ones once every tile has its regular passes
+            if (mAdaptiveThreshold > 0) {
+                int[] extraPasses = distributeSpareBudget();
+                int noisyTiles = 0;
+                for (int extra : extraPasses)
+                    noisyTiles += extra > 0 ? 1 : 0;
+
+                mFinishedTiles = new CountDownLatch(noisyTiles);
+                for (int tile = 0; tile < tileCount; tile++) {
+                    if (extraPasses[tile] > 0)
+                        pool.execute(createTilePass(tile, tilesX, width, height, mTilePasses[tile], mTilePasses[tile] + extraPasses[tile]));
+                }
+                mFinishedTiles.await();
             }
 
-            //Save Image every 8 Samples
-            //if (currentSample % 8 == 0)
-            //    this.exportRendering();
-        });
+            //let a running publish finish so it cannot overwrite the final image with older values
+            publisher.shutdown();
+            publisher.awaitTermination(Long.MAX_VALUE, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
 
-        for (int by = 0; by < blocksY; by++) {
-            for (int bx = 0; bx < blocksX; bx++) {
-                final int startX = bx * blockWidth;
-                final int endX = Math.min(startX + blockWidth, width);
-                final int startY = by * blockHeight;
-                final int endY = Math.min(startY + blockHeight, height);
+        pool.shutdownNow();
+        publishProgress(totalPasses);
 
-                executor.submit(() -> {
-                    for (int localSample = 0; localSample < mMaxNumSamples; localSample++) {
-                        for (int py = startY; py < endY; py++) {
-                            int rowOffset = py * width;
-                            for (int px = startX; px < endX; px++) {
-                                int index = rowOffset + px;
+        if (mAdaptiveThreshold > 0)
+            Log.print(this, "Adaptive sampling rendered " + mFinishedPasses.get() + " of " + totalPasses + " tile passes");
 
-                                RgbColor colorAccum = new RgbColor(0, 0, 0);
+        this.exportRendering();
+    }
 
-                                //set filter width to zero if no AA so we dont offset
-                                mAntiAliasingFilterWidth = (mAntiAliasingSamples == 1) ? 0 : mAntiAliasingFilterWidth;
-                                for (int i = 0; i < mAntiAliasingSamples; i++) {
-                                    float offsetX = RANDOM.nextFloat() * mAntiAliasingFilterWidth;
-                                    float offsetY = RANDOM.nextFloat() * mAntiAliasingFilterWidth;
+    private TilePass createTilePass(int tileIndex, int tilesX, int width, int height, int sample, int endSample) {
+        int startX = tileIndex % tilesX * TILE_SIZE;
+        int startY = tileIndex / tilesX * TILE_SIZE;
+        return new TilePass(tileIndex, startX, Math.min(startX + TILE_SIZE, width), startY, Math.min(startY + TILE_SIZE, height), sample, endSample);
+    }
 
-                                    Ray ray = camera.getRay((px + offsetX + 0.5f / width) / width, 1f - (py + offsetY + 0.5f / height) / height);
+    /*
+        The passes converged tiles did not use, handed to the tiles that are still noisy after
+        their regular passes in proportion to their error, up to MAX_ADAPTIVE_PASS_FACTOR times
+        the regular passes per tile. Passes lost to rounding go to the noisiest tiles first.
+        Error and passes of a tile only depend on its own samples, so the split is the same
+        on every run, no matter in which order the threads finished the tiles.
+     */
+    private int[] distributeSpareBudget() {
+        int tileCount = mTilePasses.length;
+        int maxExtra = mMaxNumSamples * (MAX_ADAPTIVE_PASS_FACTOR - 1);
+
+        long spare = 0;
+        double errorSum = 0;
+        List<Integer> noisy = new ArrayList<>();
+        for (int tile = 0; tile < tileCount; tile++) {
+            if (mTilePasses[tile] < mMaxNumSamples) {
+                spare += mMaxNumSamples - mTilePasses[tile];
+            } else if (mTileErrors[tile] >= mAdaptiveThreshold) {
+                noisy.add(tile);
+                errorSum += mTileErrors[tile];
+            }
+        }
 
-                                    colorAccum = colorAccum.add(traceRecursive(ray, 0));
-                                }
+        int[] extraPasses = new int[tileCount];
+        if (noisy.isEmpty() || spare == 0)
+            return extraPasses;
 
-                                colorAccum = colorAccum.multScalar(1f / mAntiAliasingSamples);
+        //noisiest first, ties by index so the order is fixed
+        noisy.sort((a, b) -> mTileErrors[a] != mTileErrors[b] ? Float.compare(mTileErrors[b], mTileErrors[a]) : Integer.compare(a, b));
 
-                                RgbColor oldColor = hdrColors[index];
-                                RgbColor blended = colorAccum.add(oldColor.multScalar(localSample)).multScalar(1f / (localSample + 1f));
-                                hdrColors[index] = blended;
-                            }
-                        }
+        long given = 0;
+        for (int tile : noisy) {
+            extraPasses[tile] = (int) Math.min(maxExtra, (long) (spare * (mTileErrors[tile] / errorSum)));
+            given += extraPasses[tile];
+        }
+        for (int i = 0; given < spare && i < noisy.size(); i++) {
+            int tile = noisy.get(i);
+            int extra = (int) Math.min(maxExtra - extraPasses[tile], spare - given);
+            extraPasses[tile] += extra;
+            given += extra;
+        }
 
-                        Thread.yield();
+        Log.print(this, "Adaptive sampling hands " + given + " spare passes to " + noisy.size() + " noisy tiles");
+        return extraPasses;
+    }
 
-                        try {
-                            barrier.await();
-                        } catch (InterruptedException | BrokenBarrierException e) {
-                            Thread.currentThread().interrupt();
-                        }
+    /**  Copy the current state of the image to the window **/
+    private void publishProgress(long totalPasses) {
+        Tonemapper.resolve(mAccumulation, mRenderTarget, mToneMapping);
+
+        int percent = (int) (100 * mFinishedPasses.get() / totalPasses);
+        if (percent != mPublishedPercent) {
+            mPublishedPercent = percent;
+            Log.print(this, "Progress " + percent + "% at " + stopTime(tStart));
+        }
+
+        //Save Image every 8 Samples
+        //if (percent % 10 == 0)
+        //    this.exportRendering();
+    }
+
+    /*
+        One sample pass over one tile. When it is done it forks the next pass of the same
+        tile, so a tile never has two passes in flight and idle threads can steal the
+        continuation from a busy one. There is no barrier between tiles.
+     */
+    //passes only live in the pool of one render and are never serialized
+    @SuppressWarnings("serial")
+    private class TilePass extends RecursiveAction {
+        private final int tileIndex;
+        private final int startX, endX, startY, endY;
+        private final int sample;
+        //the tile stops before this pass
+        private final int endSample;
+
+        TilePass(int tileIndex, int startX, int endX, int startY, int endY, int sample, int endSample) {
+            this.tileIndex = tileIndex;
+            this.startX = startX;
+            this.endX = endX;
+            this.startY = startY;
+            this.endY = endY;
+            this.sample = sample;
+            this.endSample = endSample;
+        }
+
+        @Override
+        protected void compute() {
+            float error;
+            try {
+                error = renderPass();
+            } catch (RuntimeException e) {
+                Log.error(Raytracer.this, "Tile at " + startX + ", " + startY + " failed: " + e);
+                //a failed tile neither gives nor takes spare passes
+                mTilePasses[tileIndex] = Math.max(endSample, mMaxNumSamples);
+                mTileErrors[tileIndex] = 0;
+                mFinishedTiles.countDown();
+                return;
+            }
+
+            mFinishedPasses.incrementAndGet();
+            if (needsNextPass(sample + 1, error)) {
+                new TilePass(tileIndex, startX, endX, startY, endY, sample + 1, endSample).fork();
+            } else {
+                mTilePasses[tileIndex] = sample + 1;
+                mTileErrors[tileIndex] = error;
+                mFinishedTiles.countDown();
+            }
+        }
+
+        /*
+            A tile stops at its end pass or, with adaptive sampling, once it converged. The
+            latch makes the stored passes and error visible to the thread that waits for it.
+         */
+        private boolean needsNextPass(int passes, float error) {
+            if (passes >= endSample)
+                return false;
+            return mAdaptiveThreshold <= 0 || passes < MIN_ADAPTIVE_PASSES || error >= mAdaptiveThreshold;
+        }
+
+        /*
+            Render one sample pass and return the average standard error of the pixels of the tile.
+         */
+        private float renderPass() {
+            Sampler sampler = mSamplerType.create(mSeed, tileIndex, sample, mMaxNumSamples * mAntiAliasingSamples);
+
+            if (mPacketTracing)
+                renderPackets(sampler);
+            else
+                renderRays(sampler);
+
+            if (mAdaptiveThreshold <= 0)
+                return Float.POSITIVE_INFINITY;
+
+            //the average keeps a single firefly from holding back the whole tile
+            float errorSum = 0;
+            for (int py = startY; py < endY; py++)
+                for (int px = startX; px < endX; px++)
+                    errorSum += mAccumulation.getStandardError(px, py);
+            return errorSum / ((endX - startX) * (endY - startY));
+        }
+
+        private void renderRays(Sampler sampler) {
+            RgbColor colorAccum = new RgbColor(0, 0, 0);
+            Vec2 jitter = new Vec2();
+
+            for (int py = startY; py < endY; py++) {
+                for (int px = startX; px < endX; px++) {
+                    colorAccum.set(0, 0, 0);
+
+                    for (int i = 0; i < mAntiAliasingSamples; i++) {
+                        Ray ray = generateCameraRay(px, py, sample * mAntiAliasingSamples + i, sampler, jitter);
+                        colorAccum.addInPlace(integrate(ray, mSceneHittable.hit(ray), sampler));
                     }
-                });
+
+                    //only this pass writes the pixel, the publisher may read a partly added sample
+                    mAccumulation.add(px, py, colorAccum, mAntiAliasingSamples);
+                }
             }
         }
 
-        executor.shutdown();
-        try {
-            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.SECONDS);
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
+        /*
+            The camera rays of one sample of all pixels of a block are traced as one packet, the
+            bounces after the first hit still go one ray at a time. Every pixel
+            sample is started twice: once for the jitter of its camera ray and once more for the
+            shading, so pixel samplers hand out the same dimensions as with single rays.
+         */
+        private void renderPackets(Sampler sampler) {
+            RayPacket packet = new RayPacket(PACKET_SIZE * PACKET_SIZE);
+            RgbColor[] colorAccum = new RgbColor[PACKET_SIZE * PACKET_SIZE];
+            for (int k = 0; k < colorAccum.length; k++)
+                colorAccum[k] = new RgbColor(0, 0, 0);
+            Vec2 jitter = new Vec2();
+
+            for (int blockY = startY; blockY < endY; blockY += PACKET_SIZE) {
+                for (int blockX = startX; blockX < endX; blockX += PACKET_SIZE) {
+                    int blockEndX = Math.min(blockX + PACKET_SIZE, endX);
+                    int blockEndY = Math.min(blockY + PACKET_SIZE, endY);
+
+                    for (RgbColor color : colorAccum)
+                        color.set(0, 0, 0);
+
+                    for (int i = 0; i < mAntiAliasingSamples; i++) {
+                        int sampleIndex = sample * mAntiAliasingSamples + i;
+
+                        packet.clear();
+                        for (int py = blockY; py < blockEndY; py++)
+                            for (int px = blockX; px < blockEndX; px++)
+                                packet.add(generateCameraRay(px, py, sampleIndex, sampler, jitter));
+
+                        mSceneHittable.intersectPacket(packet, 0, packet.size() - 1);
+
+                        int k = 0;
+                        for (int py = blockY; py < blockEndY; py++) {
+                            for (int px = blockX; px < blockEndX; px++, k++) {
+                                sampler.startPixelSample(px, py, sampleIndex);
+                                sampler.get2D(jitter);
+                                colorAccum[k].addInPlace(integrate(packet.getRay(k), packet.getIntersection(k), sampler));
+                            }
+                        }
+                    }
+
+                    int k = 0;
+                    for (int py = blockY; py < blockEndY; py++)
+                        for (int px = blockX; px < blockEndX; px++, k++)
+                            mAccumulation.add(px, py, colorAccum[k], mAntiAliasingSamples);
+                }
+            }
         }
     }
 
-    private RgbColor traceRecursive(Ray ray, int depth) {
-        Intersection intersection = findClosestIntersection(mScene.getObjects(), ray);
+    /**  Start a pixel sample and build its camera ray, the jitter takes the first two dimensions **/
+    private Ray generateCameraRay(int px, int py, int sampleIndex, Sampler sampler, Vec2 jitter) {
+        int width = mRenderTarget.getWidth();
+        int height = mRenderTarget.getHeight();
+
+        sampler.startPixelSample(px, py, sampleIndex);
+        sampler.get2D(jitter);
+        float offsetX = jitter.x * mAntiAliasingFilterWidth;
+        float offsetY = jitter.y * mAntiAliasingFilterWidth;
+
+        return mCamera.getRay((px + offsetX + 0.5f / width) / width, 1f - (py + offsetY + 0.5f / height) / height);
+    }
+
+    /**  Radiance along a camera ray whose closest hit was already found **/
+    private RgbColor integrate(Ray ray, Intersection intersection, Sampler sampler) {
+        return switch (mIntegrator) {
+            case WHITTED -> traceRecursive(ray, intersection, 0, sampler);
+            case PATH_TRACING -> tracePath(ray, intersection, sampler);
+            case PATH_TRACING_MIS -> tracePathWithLightSampling(ray, intersection, sampler);
+        };
+    }
+
+    private RgbColor traceRecursive(Ray ray, int depth, Sampler sampler) {
+        return traceRecursive(ray, mSceneHittable.hit(ray), depth, sampler);
+    }
+
+    private RgbColor traceRecursive(Ray ray, Intersection intersection, int depth, Sampler sampler) {
         if (intersection == null)
             return RgbColor.BLACK;
 
         Material material = intersection.material();
-        RgbColor color = getDirectLighting(intersection, ray);
+
+        //owned by this call, so it can be accumulated in place
+        RgbColor color = new RgbColor(0, 0, 0);
+        addDirectLighting(intersection, ray, color, sampler);
 
         if (mUseGi && depth < mGiLevel) {
-            RgbColor giColor = RgbColor.BLACK;
+            RgbColor giColor = new RgbColor(0, 0, 0);
 
             int samples = 0;
             while (samples < mGiSamples) {
                 // Refraction
                 Ray refractedRay = material.refract(intersection, ray);
                 if (refractedRay != null)
-                    giColor = giColor.add(traceRecursive(refractedRay, depth + 1).multScalar(material.getTransparency()));
+                    giColor.addScaledInPlace(traceRecursive(refractedRay, depth + 1, sampler), material.getTransparency());
 
                 // Reflection
-                Ray reflectedRay = material.reflect(intersection, ray);
+                Ray reflectedRay = material.reflect(intersection, ray, sampler);
                 if (reflectedRay != null)
-                    giColor = giColor.add(traceRecursive(reflectedRay, depth + 1).multScalar(material.getTransparency()));
+                    giColor.addScaledInPlace(traceRecursive(reflectedRay, depth + 1, sampler), material.getTransparency());
 
                 samples++;
             }
 
             // Average the GI results
-            if (samples > 0) {
-                giColor = giColor.multScalar(1.0f / samples);
-                color = color.add(giColor);
+            if (samples > 0)
+                color.addScaledInPlace(giColor, 1.0f / samples);
+        }
+
+        return color;
+    }
+
+    /*
+        Follow a single path instead of a tree of rays. Every bounce picks one of the lobes
+        of the material at random and divides by the probability of the pick, so on average
+        the same light is gathered as with all lobes. The throughput carries the reflectance
+        of all surfaces so far and decides how likely the path is to survive the roulette.
+     */
+    private RgbColor tracePath(Ray ray, Intersection intersection, Sampler sampler) {
+        RgbColor color = new RgbColor(0, 0, 0);
+        RgbColor throughput = new RgbColor(1, 1, 1);
+        RgbColor direct = new RgbColor(0, 0, 0);
+        int maxBounces = mUseGi ? mGiLevel : 0;
+
+        for (int bounce = 0; ; bounce++) {
+            //the hit of the camera ray is passed in
+            if (bounce > 0)
+                intersection = mSceneHittable.hit(ray);
+            if (intersection == null)
+                break;
+
+            direct.set(0, 0, 0);
+            addDirectLighting(intersection, ray, direct, sampler);
+            color.addInPlace(direct.multRGBInPlace(throughput));
+
+            if (bounce >= maxBounces)
+                break;
+
+            Material material = intersection.material();
+            Ray refractedRay = material.refract(intersection, ray);
+            Ray reflectedRay = material.reflect(intersection, ray, sampler);
+
+            float pickWeight = 1f;
+            if (refractedRay != null && reflectedRay != null) {
+                ray = sampler.get1D() < 0.5f ? refractedRay : reflectedRay;
+                pickWeight = 2f;
+            } else if (refractedRay != null) {
+                ray = refractedRay;
+            } else if (reflectedRay != null) {
+                ray = reflectedRay;
+            } else {
+                break;
             }
+
+            throughput.multRGBInPlace(material.getReflectance()).multScalarInPlace(material.getTransparency() * pickWeight);
+
+            if (!survivesRoulette(bounce + 1, throughput, sampler))
+                break;
         }
 
         return color;
     }
 
-    private RgbColor getDirectLighting(Intersection intersection, Ray ray) {
+    /*
+        Path tracing with next-event estimation. Every bounce samples one emitter explicitly and
+        continues the path by sampling the bsdf. An emitter that is part of the geometry can be found
+        both ways, so both estimates are weighted with the power heuristic instead of counting its light twice.
+        Lights without geometry can only be found by sampling them and keep their full weight,
+        so do emitters the path runs into right after a specular bounce.
+     */
+    private RgbColor tracePathWithLightSampling(Ray ray, Intersection intersection, Sampler sampler) {
+        RgbColor color = new RgbColor(0, 0, 0);
+        RgbColor throughput = new RgbColor(1, 1, 1);
+        RgbColor bsdf = new RgbColor(0, 0, 0);
+        EmitterSample lightSample = new EmitterSample();
+        Vec2 u = new Vec2();
+        int maxBounces = mUseGi ? mGiLevel : 0;
+
+        //the previous bounce, needed to weight an emitter the path runs into
+        boolean specularBounce = true;
+        float bsdfPdf = 0;
+        Vec3 previousPosition = null;
+
+        for (int bounce = 0; ; bounce++) {
+            if (bounce > 0)
+                intersection = mSceneHittable.hit(ray);
+            if (intersection == null)
+                break;
+
+            Material material = intersection.material();
+            Vec3 position = intersection.position();
+            Vec3 normal = intersection.normal();
+            Vec3 wo = ray.direction().negate().normalizeInPlace();
+
+            RgbColor emission = material.getEmission();
+            if (!emission.isBlack() && normal.scalar(wo) > 0) {
+                float weight = 1;
+                Emitter emitter = mHittableEmitters.get(intersection.object());
+                if (!specularBounce && emitter != null)
+                    weight = powerHeuristic(bsdfPdf, emitter.pdf(previousPosition, position, normal) / mEmitters.size());
+                color.addScaledInPlace(bsdf.set(emission).multRGBInPlace(throughput), weight);
+            }
+
+            if (bounce >= maxBounces)
+                break;
+
+            if (!material.isSpecular() && !mEmitters.isEmpty()) {
+                int index = Math.min((int) (sampler.get1D() * mEmitters.size()), mEmitters.size() - 1);
+                Emitter emitter = mEmitters.get(index);
+                sampler.get2D(u);
+
+                if (emitter.sample(position, u, lightSample)) {
+                    material.evalBsdf(intersection, wo, lightSample.direction, bsdf);
+                    if (!bsdf.isBlack() && !isOccluded(position, normal, lightSample)) {
+                        float lightPdf = lightSample.pdf / mEmitters.size();
+                        float weight = emitter.isHittable()
+                                ? powerHeuristic(lightPdf, material.pdfBsdf(intersection, wo, lightSample.direction))
+                                : 1;
+                        color.addScaledInPlace(bsdf.multRGBInPlace(lightSample.radiance).multRGBInPlace(throughput), weight / lightPdf);
+                    }
+                }
+            }
+
+            BsdfSample sample = material.sampleBsdf(intersection, wo, sampler);
+            if (sample == null)
+                break;
+
+            throughput.multRGBInPlace(sample.weight());
+            specularBounce = sample.specular();
+            bsdfPdf = sample.pdf();
+            previousPosition = position;
+
+            if (!survivesRoulette(bounce + 1, throughput, sampler))
+                break;
+
+            //continue on the side of the surface the new direction points to
+            float side = sample.direction().scalar(normal) > 0 ? RAY_EPSYLON : -RAY_EPSYLON;
+            ray = new Ray(new Vec3(position).addScaledInPlace(normal, side), sample.direction());
+        }
+
+        return color;
+    }
+
+    /*
+        Russian roulette: from RUSSIAN_ROULETTE_DEPTH on a path survives with a probability
+        following its throughput, surviving paths are scaled up to make up for the others
+     */
+    private boolean survivesRoulette(int bounces, RgbColor throughput, Sampler sampler) {
+        if (bounces < RUSSIAN_ROULETTE_DEPTH)
+            return true;
+
+        float survival = Math.min(throughput.maxComponent(), MAX_SURVIVAL_PROBABILITY);
+        if (sampler.get1D() >= survival)
+            return false;
+
+        throughput.multScalarInPlace(1f / survival);
+        return true;
+    }
+
+    private static float powerHeuristic(float pdf, float otherPdf) {
+        float squared = pdf * pdf;
+        float otherSquared = otherPdf * otherPdf;
+        return squared + otherSquared > 0 ? squared / (squared + otherSquared) : 0;
+    }
+
+    /**  Check if anything lies between the position and the sampled emitter point **/
+    private boolean isOccluded(Vec3 position, Vec3 normal, EmitterSample lightSample) {
+        float side = lightSample.direction.scalar(normal) > 0 ? SHADOW_EPSYLON : -SHADOW_EPSYLON;
+        //the emitter itself lies at the sampled distance, the ray ends just before it
+        Ray shadowRay = new Ray(new Vec3(position).addScaledInPlace(normal, side), new Vec3(lightSample.direction),
+                lightSample.distance * (1 - SHADOW_EPSYLON) - SHADOW_EPSYLON);
+
+        return mSceneHittable.occluded(shadowRay);
+    }
+
+    private void addDirectLighting(Intersection intersection, Ray ray, RgbColor color, Sampler sampler) {
 
         //if unlit, just return the ambient color
         //if (intersection.material() instanceof UnlitMaterial)
         //    return intersection.material().getAlbedo();
 
         //If not in shadow, calculate material color
-        RgbColor color = RgbColor.BLACK;
-        if (!isInShadow(intersection))
-            color = intersection.material().getDirectLighting(intersection, ray, mScene.getLights());
+        if (!isInShadow(intersection, sampler))
+            color.addInPlace(intersection.material().getDirectLighting(intersection, ray, mScene.getLights()));
 
         if (mUseAo)
-            color = color.multRGB(ambientOcclusion(intersection));
-
-        return color;
+            color.multScalarInPlace(ambientOcclusion(intersection, sampler));
     }
 
-    private boolean isInShadow(Intersection intersection) {
+    private boolean isInShadow(Intersection intersection, Sampler sampler) {
         //mSoftShadows = false;
 
         Vec3 hitPosition = intersection.position();
         Vec3 normal = intersection.normal();
 
         //offset to avoid self-intersection (shadow acne)
-        Vec3 origin = hitPosition.add(normal.multScalar(SHADOW_EPSYLON));
+        Vec3 origin = new Vec3(hitPosition).addScaledInPlace(normal, SHADOW_EPSYLON);
 
         for (Light light : mScene.getLights()) {
             Vec3 lightPosition = light.getPosition();
@@ -331,26 +790,23 @@ public class Raytracer {
             int shadowHits = 0;
             int samples = mSoftShadows ? mLightSamples : 1;
 
+            Vec2 jitter = new Vec2();
             for (int i = 0; i < samples; i++) {
+                Vec3 toLight = new Vec3().setSub(lightPosition, hitPosition);
+
                 //If soft shadows, jitter the light position within the light radius
-                Vec3 jitteredLightPos = lightPosition;
                 if (mSoftShadows) {
-                    Vec3 jitter = new Vec3(
-                            (2* RANDOM.nextFloat() - 1f) * lightRadius,
-                            ((2 * RANDOM.nextFloat()) - 1f) * lightRadius,
-                            ((2 * RANDOM.nextFloat()) - 1f) * lightRadius
-                    );
-                    jitteredLightPos = lightPosition.add(jitter);
+                    sampler.get2D(jitter);
+                    toLight.x += (2 * jitter.x - 1f) * lightRadius;
+                    toLight.y += (2 * jitter.y - 1f) * lightRadius;
+                    toLight.z += (2 * sampler.get1D() - 1f) * lightRadius;
                 }
 
-                Vec3 toLight = jitteredLightPos.sub(hitPosition);
-
-                //cast ray from hit position to light
-                Ray shadowRay = new Ray(origin, toLight.normalize());
-                Intersection shadowHit = findClosestIntersection(mScene.getObjects(), shadowRay);
+                float lightDistance = toLight.length();
 
-                // If the hit is closer than the light distance and it is not the same object, it is shadowed
-                if (shadowHit != null && shadowHit.distance() < toLight.length()) {
+                //cast ray from hit position to light, anything closer than the light shadows it
+                Ray shadowRay = new Ray(origin, toLight.multScalarInPlace(1f / lightDistance), lightDistance);
+                if (mSceneHittable.occluded(shadowRay)) {
                     if (!mSoftShadows)
                         return true;
                     shadowHits++; // Increment shadow hit counter
@@ -368,28 +824,25 @@ public class Raytracer {
 
 
 
-    private RgbColor ambientOcclusion(Intersection intersection) {
+    private float ambientOcclusion(Intersection intersection, Sampler sampler) {
         int occlusionCount = 0;
 
         Vec3 normal = intersection.normal();
         Vec3 position = intersection.position();
 
-        for (int i = 0; i < mAoSamples; i++) {
-            Vec3 randomDir = randomInHemisphere(normal);
-
-            //Offset origin along the normal to avoid self-intersection
-            Vec3 aoOrigin = position.add(normal.multScalar(RAY_EPSYLON));
-            Ray aoRay = new Ray(aoOrigin, randomDir);
+        //Offset origin along the normal to avoid self-intersection
+        Vec3 aoOrigin = new Vec3(position).addScaledInPlace(normal, RAY_EPSYLON);
 
-            Intersection aoHit = findClosestIntersection(mScene.getObjects(), aoRay);
+        for (int i = 0; i < mAoSamples; i++) {
+            Vec3 randomDir = randomInHemisphere(normal, sampler);
 
             // Only count occlusion if something is hit within max AO range
-            if (aoHit != null && aoHit.distance() < mAoDistance)
+            Ray aoRay = new Ray(aoOrigin, randomDir, mAoDistance);
+            if (mSceneHittable.occluded(aoRay))
                 occlusionCount++;
         }
 
         // AO factor: 1 = fully lit, 0 = fully occluded
-        float occlusionFactor = 1.0f - (occlusionCount / (float) mAoSamples);
-        return new RgbColor(occlusionFactor, occlusionFactor, occlusionFactor);
+        return 1.0f - (occlusionCount / (float) mAoSamples);
     }
 }
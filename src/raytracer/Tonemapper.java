@@ -1,5 +1,6 @@
 package raytracer;
 
+import ui.RenderTarget;
 import utils.RgbColor;
 
 public class Tonemapper {
@@ -24,4 +25,33 @@ public class Tonemapper {
         float e = 0.14f;
         return (x * (a * x + b)) / (x * (c * x + d) + e);
     }
+
+    /**
+     Clamp a linear color to the displayable range and pack it as RGB integer
+     **/
+    public static int toRGB(float r, float g, float b) {
+        r = Math.clamp(r, 0f, 1f);
+        g = Math.clamp(g, 0f, 1f);
+        b = Math.clamp(b, 0f, 1f);
+        return ((int) (r * 255f) << 16) + ((int) (g * 255f) << 8) + ((int) (b * 255f));
+    }
+
+    /**
+     Resolve the averaged samples of the buffer into the render target, optionally through the ACES curve
+     **/
+    public static void resolve(AccumulationBuffer buffer, RenderTarget target, boolean aces) {
+        RgbColor color = new RgbColor(0, 0, 0);
+
+        for (int y = 0; y < buffer.getHeight(); y++) {
+            for (int x = 0; x < buffer.getWidth(); x++) {
+                buffer.get(x, y, color);
+
+                int rgb = aces
+                        ? toRGB(ACES(color.red()), ACES(color.green()), ACES(color.blue()))
+                        : toRGB(color.red(), color.green(), color.blue());
+                target.setPixel(rgb, x, y);
+            }
+        }
+        target.update();
+    }
 }
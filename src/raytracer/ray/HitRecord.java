@@ -0,0 +1,51 @@
+package raytracer.ray;
+
+import scene.models.SceneObject;
+
+/*
+    Closest hit found so far by a closest-hit query, without any shading data.
+
+    Primitives only store what they get for free from their intersection test: the
+    distance, themselves and, for triangles, the barycentric coordinates. The full
+    Intersection is built once from the record when the query is done, so farther
+    candidates that are replaced later never pay for a hit point or a normal.
+ */
+public final class HitRecord {
+    public float distance = Float.POSITIVE_INFINITY;
+    public float u;
+    public float v;
+
+    //the primitive that was hit, or the model that holds it
+    public SceneObject object;
+    //triangle of an indexed mesh that was hit, -1 if the object is the primitive itself
+    public int primitive = -1;
+    //mesh instance the primitive was hit through, null if the primitive is in world space
+    public SceneObject instance;
+
+    /**
+     Replace the record with a closer hit of a world space primitive
+     **/
+    public void set(SceneObject object, float distance, float u, float v) {
+        set(object, -1, distance, u, v);
+    }
+
+    /**
+     Replace the record with a closer hit of a triangle of an indexed mesh in world space, the object builds the intersection
+     **/
+    public void set(SceneObject object, int primitive, float distance, float u, float v) {
+        this.object = object;
+        this.primitive = primitive;
+        this.distance = distance;
+        this.u = u;
+        this.v = v;
+        this.instance = null;
+    }
+
+    /**
+     Build the intersection of the recorded hit, the ray is the one the record was filled with
+     **/
+    public Intersection toIntersection(Ray ray) {
+        SceneObject owner = instance != null ? instance : object;
+        return owner.buildIntersection(ray, this);
+    }
+}
@@ -1,6 +1,11 @@
 package raytracer.ray;
 
 import materials.Material;
+import scene.models.SceneObject;
 import utils.algebra.Vec3;
 
-public record Intersection(float distance, Vec3 position, Vec3 normal, Material material) {}
\ No newline at end of file
+/*
+    Closest hit of a ray. The object is the primitive that was hit, for mesh triangles
+    the model and for mesh instances the instance they were hit through.
+ */
+public record Intersection(float distance, Vec3 position, Vec3 normal, Material material, SceneObject object) {}
@@ -2,5 +2,62 @@ package raytracer.ray;
 
 import utils.algebra.Vec3;
 
+/*
+    A ray only counts hits at distances inside its interval (tMin, tMax).
 
-public record Ray(Vec3 origin, Vec3 direction) {}
\ No newline at end of file
+    tMin keeps rays leaving a surface from hitting it again. Closest-hit queries shrink
+    tMax to every hit they find, so farther candidates are rejected before any hit point or
+    normal is built for them; after such a query tMax is the distance of the returned hit.
+    Any-hit queries use tMax as the length of the segment they test, e.g. up to a light.
+ */
+public final class Ray {
+    private final Vec3 origin;
+    private final Vec3 direction;
+    private final float tMin;
+    private float tMax;
+
+    public Ray(Vec3 origin, Vec3 direction) {
+        this(origin, direction, RayUtils.RAY_EPSYLON, Float.POSITIVE_INFINITY);
+    }
+
+    public Ray(Vec3 origin, Vec3 direction, float tMax) {
+        this(origin, direction, RayUtils.RAY_EPSYLON, tMax);
+    }
+
+    public Ray(Vec3 origin, Vec3 direction, float tMin, float tMax) {
+        this.origin = origin;
+        this.direction = direction;
+        this.tMin = tMin;
+        this.tMax = tMax;
+    }
+
+    public Vec3 origin() {
+        return origin;
+    }
+
+    public Vec3 direction() {
+        return direction;
+    }
+
+    public float tMin() {
+        return tMin;
+    }
+
+    public float tMax() {
+        return tMax;
+    }
+
+    /**
+     Shorten the ray to the given distance, used by closest-hit queries for every closer hit
+     **/
+    public void setTMax(float tMax) {
+        this.tMax = tMax;
+    }
+
+    /**
+     True if a hit at the given distance lies inside the interval of the ray
+     **/
+    public boolean contains(float t) {
+        return t > tMin && t < tMax;
+    }
+}
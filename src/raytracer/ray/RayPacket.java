@@ -0,0 +1,148 @@
+package raytracer.ray;
+
+/*
+    Closest-hit queries that are traced together, e.g. the camera rays of a block of pixels.
+
+    Besides the rays and their records the packet keeps the origins and inverse directions
+    of all rays next to each other for the box tests, and the interval every component
+    spans over the whole packet. As long as the directions of all rays agree in sign on
+    every axis, these intervals bound a frustum around the packet: a box the frustum misses
+    is missed by all of its rays, so a single test culls a node for the whole packet.
+ */
+public final class RayPacket {
+
+    private final Ray[] rays;
+    private final HitRecord[] records;
+    private int size;
+
+    //per ray, read by the box tests of the traversal
+    public final float[] originX, originY, originZ;
+    public final float[] invDirX, invDirY, invDirZ;
+
+    //interval of every component over the packet, in the order x, y, z
+    private final float[] originMin = new float[3];
+    private final float[] originMax = new float[3];
+    private final float[] invDirMin = new float[3];
+    private final float[] invDirMax = new float[3];
+    //smallest tMin of all rays, the frustum starts there
+    private float minDistance;
+
+    public RayPacket(int capacity) {
+        rays = new Ray[capacity];
+        records = new HitRecord[capacity];
+        originX = new float[capacity];
+        originY = new float[capacity];
+        originZ = new float[capacity];
+        invDirX = new float[capacity];
+        invDirY = new float[capacity];
+        invDirZ = new float[capacity];
+        clear();
+    }
+
+    /**
+     Remove all rays, the packet can be filled again
+     **/
+    public void clear() {
+        for (int axis = 0; axis < 3; axis++) {
+            originMin[axis] = invDirMin[axis] = Float.POSITIVE_INFINITY;
+            originMax[axis] = invDirMax[axis] = Float.NEGATIVE_INFINITY;
+        }
+        minDistance = Float.POSITIVE_INFINITY;
+        size = 0;
+    }
+
+    /**
+     Add a ray with an empty record and return its index
+     **/
+    public int add(Ray ray) {
+        int index = size++;
+        rays[index] = ray;
+        records[index] = new HitRecord();
+
+        originX[index] = ray.origin().x;
+        originY[index] = ray.origin().y;
+        originZ[index] = ray.origin().z;
+        invDirX[index] = 1f / ray.direction().x;
+        invDirY[index] = 1f / ray.direction().y;
+        invDirZ[index] = 1f / ray.direction().z;
+
+        minDistance = Math.min(minDistance, ray.tMin());
+        grow(0, originX[index], invDirX[index]);
+        grow(1, originY[index], invDirY[index]);
+        grow(2, originZ[index], invDirZ[index]);
+        return index;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public Ray getRay(int index) {
+        return rays[index];
+    }
+
+    public HitRecord getRecord(int index) {
+        return records[index];
+    }
+
+    /**
+     Intersection of the closest hit of a ray after the packet was traced, null if it hit nothing
+     **/
+    public Intersection getIntersection(int index) {
+        HitRecord record = records[index];
+        return record.object != null ? record.toIntersection(rays[index]) : null;
+    }
+
+    /**
+     True if the directions of all rays agree in sign on every axis, only then the packet has a frustum
+     **/
+    public boolean isCoherent() {
+        for (int axis = 0; axis < 3; axis++) {
+            //a zero component gives an infinite inverse of the sign of the zero, which still counts
+            if (!(invDirMin[axis] > 0 || invDirMax[axis] < 0))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     True if no ray of a coherent packet can hit the box. Conservative, a box that is not culled may still
+     be missed by every ray
+     **/
+    public boolean frustumMisses(float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+        float near = Float.NEGATIVE_INFINITY;
+        float far = Float.POSITIVE_INFINITY;
+
+        for (int axis = 0; axis < 3; axis++) {
+            float lower = axis == 0 ? minX : axis == 1 ? minY : minZ;
+            float upper = axis == 0 ? maxX : axis == 1 ? maxY : maxZ;
+
+            //rays enter through the slab plane facing them and leave through the other one
+            boolean positive = invDirMin[axis] > 0;
+            float nearPlane = positive ? lower : upper;
+            float farPlane = positive ? upper : lower;
+
+            //interval arithmetic over all origins and inverse directions of the packet
+            near = Math.max(near, lowerProduct(nearPlane - originMax[axis], nearPlane - originMin[axis], invDirMin[axis], invDirMax[axis]));
+            far = Math.min(far, upperProduct(farPlane - originMax[axis], farPlane - originMin[axis], invDirMin[axis], invDirMax[axis]));
+        }
+
+        //comparisons with NaN from 0 * infinity are false, such boxes are never culled
+        return near > far || far < minDistance;
+    }
+
+    private void grow(int axis, float origin, float invDir) {
+        originMin[axis] = Math.min(originMin[axis], origin);
+        originMax[axis] = Math.max(originMax[axis], origin);
+        invDirMin[axis] = Math.min(invDirMin[axis], invDir);
+        invDirMax[axis] = Math.max(invDirMax[axis], invDir);
+    }
+
+    private static float lowerProduct(float aMin, float aMax, float bMin, float bMax) {
+        return Math.min(Math.min(aMin * bMin, aMin * bMax), Math.min(aMax * bMin, aMax * bMax));
+    }
+
+    private static float upperProduct(float aMin, float aMax, float bMin, float bMax) {
+        return Math.max(Math.max(aMin * bMin, aMin * bMax), Math.max(aMax * bMin, aMax * bMax));
+    }
+}
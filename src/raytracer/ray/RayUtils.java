@@ -1,31 +1,32 @@
 package raytracer.ray;
 
+import raytracer.sampling.Sampler;
 import scene.models.Hittable;
 import scene.models.SceneObject;
 import scene.models.primitives.Shape;
+import utils.algebra.Vec2;
 import utils.algebra.Vec3;
 
 import java.util.List;
-import java.util.concurrent.ThreadLocalRandom;
 
 public class RayUtils {
     public static final float RAY_EPSYLON = 0.00001f;
     public static final float SHADOW_EPSYLON = 0.0001f;
 
-    public static final ThreadLocalRandom RANDOM = ThreadLocalRandom.current();
-
     // Reflection formula
     public static Vec3 reflect(Vec3 v, Vec3 n) {
         return v.sub(n.multScalar(2 * v.scalar(n)));
     }
 
     // Optimized cosine-weighted random vector in the hemisphere defined by the normal
-    public static Vec3 randomInHemisphere(Vec3 normal) {
+    public static Vec3 randomInHemisphere(Vec3 normal, Sampler sampler) {
+        Vec2 u = sampler.get2D(new Vec2());
+
         // Generate random azimuthal angle between 0 and 2 * PI
-        float phi = RANDOM.nextFloat() * (float) (2 * Math.PI);
+        float phi = u.x * (float) (2 * Math.PI);
 
         // Generate random cosine-weighted polar angle (θ) where cos(θ) is the random value
-        float cosTheta = (float) Math.sqrt(RANDOM.nextFloat());  // Cosine-weighted random
+        float cosTheta = (float) Math.sqrt(u.y);  // Cosine-weighted random
         float sinTheta = (float) Math.sqrt(1.0f - cosTheta * cosTheta);  // Sine of theta
 
         // Calculate direction components
@@ -35,34 +36,68 @@ public class RayUtils {
         Vec3 randomDir = new Vec3(x, y, cosTheta);
 
         if (randomDir.scalar(normal) < 0.0f)  // If it's in the opposite hemisphere, flip it
-            randomDir = randomDir.negate();
+            randomDir.negateInPlace();
 
         return randomDir;
     }
 
+    // Direction at polar angle theta and azimuth phi around the given unit axis
+    public static Vec3 directionAround(Vec3 axis, float cosTheta, float phi) {
+        float sinTheta = (float) Math.sqrt(Math.max(0f, 1f - cosTheta * cosTheta));
+
+        // Orthonormal basis around the axis without branches on the axis direction (Duff et al. 2017)
+        float sign = Math.copySign(1f, axis.z);
+        float a = -1f / (sign + axis.z);
+        float b = axis.x * axis.y * a;
+        float tx = 1f + sign * axis.x * axis.x * a, ty = sign * b, tz = -sign * axis.x;
+        float bx = b, by = sign + axis.y * axis.y * a, bz = -axis.y;
+
+        float x = sinTheta * (float) Math.cos(phi);
+        float y = sinTheta * (float) Math.sin(phi);
+        return new Vec3(
+                tx * x + bx * y + axis.x * cosTheta,
+                ty * x + by * y + axis.y * cosTheta,
+                tz * x + bz * y + axis.z * cosTheta);
+    }
+
+    // Cosine-weighted direction around the normal, its pdf is cos(theta) / PI
+    public static Vec3 cosineSampleHemisphere(Vec3 normal, Vec2 u) {
+        return directionAround(normal, (float) Math.sqrt(1f - u.y), u.x * (float) (2 * Math.PI));
+    }
+
+    // Closest hit of the list, every hit shortens the ray so farther objects are rejected early
     public static Intersection findClosestIntersection(List<SceneObject> hittableList, Ray ray) {
-        Intersection closestIntersection = null;
-        float closestDistance = Float.MAX_VALUE;
-
-        for (Hittable obj : hittableList) {
-            Intersection hit = obj.hit(ray);
-            if (hit != null && hit.distance() < closestDistance) {
-                closestDistance = hit.distance();
-                closestIntersection = hit;
-            }
-        }
+        HitRecord record = new HitRecord();
+        return findClosestHit(hittableList, ray, record) ? record.toIntersection(ray) : null;
+    }
 
-        return closestIntersection;
+    // First phase of the closest hit of the list, only the record of the closest hit is kept
+    public static boolean findClosestHit(List<SceneObject> hittableList, Ray ray, HitRecord record) {
+        boolean found = false;
+
+        for (Hittable obj : hittableList)
+            found |= obj.intersect(ray, record);
+
+        return found;
     }
 
-    public static Vec3 randomInUnitDisk() {
-        Vec3 p;
-        do {
-            float x = 2.0f * RANDOM.nextFloat() - 1.0f;
-            float y = 2.0f * RANDOM.nextFloat() - 1.0f;
-            p = new Vec3(x, y, 0);
-        } while (p.scalar(p) >= 1.0f);
-        return p;
+    // Concentric mapping of the square to the disk, keeps the stratification of the sample
+    public static Vec3 randomInUnitDisk(Sampler sampler) {
+        Vec2 u = sampler.get2D(new Vec2());
+        float x = 2.0f * u.x - 1.0f;
+        float y = 2.0f * u.y - 1.0f;
+        if (x == 0 && y == 0)
+            return new Vec3(0, 0, 0);
+
+        float radius, theta;
+        if (Math.abs(x) > Math.abs(y)) {
+            radius = x;
+            theta = (float) (Math.PI / 4) * (y / x);
+        } else {
+            radius = y;
+            theta = (float) (Math.PI / 2) - (float) (Math.PI / 4) * (x / y);
+        }
+        return new Vec3(radius * (float) Math.cos(theta), radius * (float) Math.sin(theta), 0);
     }
 
 }
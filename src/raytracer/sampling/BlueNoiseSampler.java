@@ -0,0 +1,106 @@
+package raytracer.sampling;
+
+import utils.algebra.Vec2;
+
+/*
+    Spreads the error over the image as blue noise. The value of a pixel is taken from
+    a tileable blue noise mask and rotated by a low-discrepancy sequence over the sample
+    index (golden ratio in 1D, R2 in 2D). Every dimension reads the mask at its own
+    random offset, so neighbouring pixels get different values in every dimension while
+    each pixel still covers the domain evenly over its samples. The sample index is Owen
+    scrambled per dimension as well, without it all dimensions of a pixel would step
+    through the sequence in lockstep and be correlated.
+ */
+public class BlueNoiseSampler extends PixelSampler {
+
+    private static final int MASK_SIZE = 64;
+
+    //1 / phi and the R2 generalisation of it to two dimensions
+    private static final double GOLDEN_RATIO = 0.6180339887498949;
+    private static final double R2_X = 0.7548776662466927;
+    private static final double R2_Y = 0.5698402909980532;
+
+    public BlueNoiseSampler(long seed) {
+        super(seed);
+    }
+
+    @Override
+    protected float sample1D(int dimension) {
+        long hash = pixelHash(dimension);
+        return rotate(maskValue(hash), shuffledIndex(hash), GOLDEN_RATIO);
+    }
+
+    @Override
+    protected void sample2D(int dimension, Vec2 out) {
+        long hash = pixelHash(dimension);
+        int index = shuffledIndex(hash);
+        out.x = rotate(maskValue(hash), index, R2_X);
+        out.y = rotate(maskValue(hash >>> 12), index, R2_Y);
+    }
+
+    private float maskValue(long hash) {
+        int offsetX = (int) hash & (MASK_SIZE - 1);
+        int offsetY = (int) (hash >>> 6) & (MASK_SIZE - 1);
+        int x = (mPixelX + offsetX) & (MASK_SIZE - 1);
+        int y = (mPixelY + offsetY) & (MASK_SIZE - 1);
+        return Mask.VALUES[y * MASK_SIZE + x];
+    }
+
+    private int shuffledIndex(long hash) {
+        return SamplerMath.nestedUniformScramble(mSampleIndex, (int) (hash >>> 32));
+    }
+
+    private static float rotate(float value, int index, double step) {
+        double rotated = value + (index & 0xffffffffL) * step;
+        return Math.min((float) (rotated - Math.floor(rotated)), SamplerMath.ONE_MINUS_EPSILON);
+    }
+
+    /*
+        The mask is generated once when it is first used. It is a simplified void-and-cluster
+        (Ulichney 1993): the pixels are ranked in the order they are added to the largest
+        void, that is the empty pixel with the lowest gaussian energy on the torus.
+     */
+    private static final class Mask {
+        static final float[] VALUES = generate();
+
+        private static final float SIGMA = 1.5f;
+
+        private static float[] generate() {
+            int count = MASK_SIZE * MASK_SIZE;
+
+            //gaussian weight of every toroidal offset
+            float[] kernel = new float[count];
+            for (int y = 0; y < MASK_SIZE; y++) {
+                int dy = Math.min(y, MASK_SIZE - y);
+                for (int x = 0; x < MASK_SIZE; x++) {
+                    int dx = Math.min(x, MASK_SIZE - x);
+                    kernel[y * MASK_SIZE + x] = (float) Math.exp(-(dx * dx + dy * dy) / (2 * SIGMA * SIGMA));
+                }
+            }
+
+            float[] energy = new float[count];
+            boolean[] taken = new boolean[count];
+            float[] values = new float[count];
+
+            for (int rank = 0; rank < count; rank++) {
+                int voidIndex = -1;
+                for (int i = 0; i < count; i++) {
+                    if (!taken[i] && (voidIndex < 0 || energy[i] < energy[voidIndex]))
+                        voidIndex = i;
+                }
+
+                taken[voidIndex] = true;
+                values[voidIndex] = (rank + 0.5f) / count;
+
+                int voidX = voidIndex % MASK_SIZE;
+                int voidY = voidIndex / MASK_SIZE;
+                for (int y = 0; y < MASK_SIZE; y++) {
+                    int kernelRow = ((y - voidY) & (MASK_SIZE - 1)) * MASK_SIZE;
+                    for (int x = 0; x < MASK_SIZE; x++)
+                        energy[y * MASK_SIZE + x] += kernel[kernelRow + ((x - voidX) & (MASK_SIZE - 1))];
+                }
+            }
+            return values;
+        }
+    }
+}
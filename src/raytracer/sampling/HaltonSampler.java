@@ -0,0 +1,52 @@
+package raytracer.sampling;
+
+import utils.algebra.Vec2;
+
+/*
+    Halton sequence with one prime base per dimension. Every pixel and dimension gets
+    its own random toroidal shift (Cranley-Patterson rotation) so neighbouring pixels do
+    not repeat the same pattern. Dimensions beyond the prime table fall back to random
+    values, the high bases are badly distributed for small sample counts anyway.
+ */
+public class HaltonSampler extends PixelSampler {
+
+    private static final int[] PRIMES = {
+            2, 3, 5, 7, 11, 13, 17, 19, 23, 29, 31, 37, 41, 43, 47, 53,
+            59, 61, 67, 71, 73, 79, 83, 89, 97, 101, 103, 107, 109, 113, 127, 131
+    };
+
+    public HaltonSampler(long seed) {
+        super(seed);
+    }
+
+    @Override
+    protected float sample1D(int dimension) {
+        if (dimension >= PRIMES.length)
+            return randomFloat(dimension);
+
+        double value = radicalInverse(PRIMES[dimension], mSampleIndex) + SamplerMath.toFloat((int) pixelHash(dimension));
+        return Math.min((float) (value - Math.floor(value)), SamplerMath.ONE_MINUS_EPSILON);
+    }
+
+    @Override
+    protected void sample2D(int dimension, Vec2 out) {
+        out.x = sample1D(dimension);
+        out.y = sample1D(dimension + 1);
+    }
+
+    /*
+        Mirror the digits of the index in the given base at the decimal point
+     */
+    static double radicalInverse(int base, int index) {
+        double inverseBase = 1.0 / base;
+        double factor = inverseBase;
+        double result = 0;
+        long n = index & 0xffffffffL;
+        while (n > 0) {
+            result += (n % base) * factor;
+            n /= base;
+            factor *= inverseBase;
+        }
+        return result;
+    }
+}
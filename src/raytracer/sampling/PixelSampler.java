@@ -0,0 +1,67 @@
+package raytracer.sampling;
+
+import utils.algebra.Vec2;
+
+/*
+    Base of the samplers whose values are a function of the pixel, the sample index
+    and the dimension only. They do not depend on the tile or the thread, so every
+    pixel sees the same sequence no matter how the image is scheduled.
+ */
+public abstract class PixelSampler implements Sampler {
+
+    protected final long mSeed;
+
+    protected int mPixelX;
+    protected int mPixelY;
+    protected int mSampleIndex;
+    private int mDimension;
+
+    protected PixelSampler(long seed) {
+        mSeed = seed;
+    }
+
+    @Override
+    public void startPixelSample(int x, int y, int index) {
+        mPixelX = x;
+        mPixelY = y;
+        mSampleIndex = index;
+        mDimension = 0;
+    }
+
+    @Override
+    public float get1D() {
+        return sample1D(mDimension++);
+    }
+
+    @Override
+    public Vec2 get2D(Vec2 out) {
+        sample2D(mDimension, out);
+        mDimension += 2;
+        return out;
+    }
+
+    /**
+     Value of the given dimension for the current pixel sample
+     **/
+    protected abstract float sample1D(int dimension);
+
+    /**
+     Values of the given dimension and the one after it for the current pixel sample
+     **/
+    protected abstract void sample2D(int dimension, Vec2 out);
+
+    /**
+     Hash of the render seed, the current pixel and the dimension, the same for all samples of the pixel
+     **/
+    protected long pixelHash(int dimension) {
+        long pixel = ((long) mPixelX << 32) | (mPixelY & 0xffffffffL);
+        return SamplerMath.mix(mSeed ^ SamplerMath.mix(pixel ^ SamplerMath.mix(dimension)));
+    }
+
+    /**
+     Uniform random value of the dimension that also differs between the samples of the pixel
+     **/
+    protected float randomFloat(int dimension) {
+        return SamplerMath.toFloat((int) SamplerMath.mix(pixelHash(dimension) ^ (mSampleIndex * 0x9e3779b97f4a7c15L)));
+    }
+}
@@ -0,0 +1,44 @@
+package raytracer.sampling;
+
+import utils.algebra.Vec2;
+
+import java.util.SplittableRandom;
+
+/*
+    Independent uniform random numbers, the dimensions of a sample are not related in any way
+ */
+public class RandomSampler implements Sampler {
+    private final SplittableRandom random;
+
+    public RandomSampler(long seed) {
+        this.random = new SplittableRandom(seed);
+    }
+
+    /**
+     Sampler for one pass over one tile, the same arguments always give the same sequence
+     no matter which thread renders the tile
+     **/
+    public static RandomSampler forTile(long renderSeed, int tileIndex, int pass) {
+        return new RandomSampler(SamplerMath.mix(SamplerMath.mix(renderSeed ^ tileIndex) ^ ((long) pass << 32)));
+    }
+
+    /**
+     The stream simply continues, every value is independent anyway
+     **/
+    @Override
+    public void startPixelSample(int x, int y, int index) {
+    }
+
+    @Override
+    public float get1D() {
+        //24 random bits, exactly representable as float
+        return (random.nextInt() >>> 8) * 0x1.0p-24f;
+    }
+
+    @Override
+    public Vec2 get2D(Vec2 out) {
+        out.x = get1D();
+        out.y = get1D();
+        return out;
+    }
+}
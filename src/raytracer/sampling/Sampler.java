@@ -0,0 +1,31 @@
+package raytracer.sampling;
+
+import utils.algebra.Vec2;
+
+/*
+    Source of the random numbers of one render task. A sampler is owned by a single
+    thread and passed down the call chain, it must never be shared between threads.
+
+    Values are handed out per dimension: after a pixel sample was started the first
+    request is dimension 0, the next one dimension 1 and so on. The camera jitter
+    takes the first two dimensions, every bounce then takes its dimensions in the
+    order it asks for them. Low-discrepancy samplers distribute every dimension well
+    over all samples of a pixel, so values of a pair should be taken with get2D.
+ */
+public interface Sampler {
+
+    /**
+     Start sample number index of the pixel, the next value is dimension 0 again
+     **/
+    void startPixelSample(int x, int y, int index);
+
+    /**
+     Value of the next dimension in [0, 1)
+     **/
+    float get1D();
+
+    /**
+     Values of the next two dimensions in [0, 1), they are distributed well as a pair
+     **/
+    Vec2 get2D(Vec2 out);
+}
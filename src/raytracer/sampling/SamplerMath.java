@@ -0,0 +1,39 @@
+package raytracer.sampling;
+
+/*
+    Hashing helpers shared by the samplers
+ */
+final class SamplerMath {
+
+    //largest float below one, keeps scrambled values inside [0, 1)
+    static final float ONE_MINUS_EPSILON = 0x1.fffffep-1f;
+
+    private SamplerMath() {
+    }
+
+    //SplitMix64 finalizer, spreads neighbouring numbers over the whole range
+    static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    /*
+        Owen scrambling: a random permutation of each digit that depends on all higher
+        digits, done with a hash on the reversed bits
+     */
+    static int nestedUniformScramble(int x, int seed) {
+        x = Integer.reverse(x);
+        x += seed;
+        x ^= x * 0x6c50b47c;
+        x ^= x * 0xb82f1e52;
+        x ^= x * 0xc7afe638;
+        x ^= x * 0x8d22f6e6;
+        return Integer.reverse(x);
+    }
+
+    //upper 24 bits as float in [0, 1), exactly representable
+    static float toFloat(int bits) {
+        return (bits >>> 8) * 0x1.0p-24f;
+    }
+}
@@ -0,0 +1,26 @@
+package raytracer.sampling;
+
+/*
+    The samplers the renderer can use, selected with Raytracer.setSampler
+ */
+public enum SamplerType {
+    RANDOM,
+    STRATIFIED,
+    HALTON,
+    SOBOL,
+    BLUE_NOISE;
+
+    /**
+     Sampler for one pass over one tile. Only the random sampler depends on the tile and
+     the pass, the others are a function of the pixel and the sample index alone.
+     **/
+    public Sampler create(long seed, int tileIndex, int pass, int samplesPerPixel) {
+        return switch (this) {
+            case RANDOM -> RandomSampler.forTile(seed, tileIndex, pass);
+            case STRATIFIED -> new StratifiedSampler(seed, samplesPerPixel);
+            case HALTON -> new HaltonSampler(seed);
+            case SOBOL -> new SobolSampler(seed);
+            case BLUE_NOISE -> new BlueNoiseSampler(seed);
+        };
+    }
+}
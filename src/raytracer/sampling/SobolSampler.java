@@ -0,0 +1,46 @@
+package raytracer.sampling;
+
+import utils.algebra.Vec2;
+
+import static raytracer.sampling.SamplerMath.nestedUniformScramble;
+
+/*
+    Padded 2D Sobol sequence with hash based Owen scrambling, after Burley, "Practical
+    Hash-based Owen Scrambling", 2020. Every pair of dimensions uses the first two
+    Sobol dimensions, the sample index is shuffled and the result Owen scrambled with
+    a seed of its own per pixel and dimension, which decorrelates the pairs.
+ */
+public class SobolSampler extends PixelSampler {
+
+    public SobolSampler(long seed) {
+        super(seed);
+    }
+
+    @Override
+    protected float sample1D(int dimension) {
+        long hash = pixelHash(dimension);
+        int index = nestedUniformScramble(mSampleIndex, (int) hash);
+        int value = nestedUniformScramble(Integer.reverse(index), (int) (hash >>> 32));
+        return SamplerMath.toFloat(value);
+    }
+
+    @Override
+    protected void sample2D(int dimension, Vec2 out) {
+        long hash = pixelHash(dimension);
+        int index = nestedUniformScramble(mSampleIndex, (int) hash);
+        int seed = (int) (hash >>> 32);
+
+        out.x = SamplerMath.toFloat(nestedUniformScramble(Integer.reverse(index), (int) SamplerMath.mix(seed)));
+        out.y = SamplerMath.toFloat(nestedUniformScramble(sobolSecondDimension(index), (int) SamplerMath.mix(seed + 1L)));
+    }
+
+    //the first dimension is the bit reversed index, the second one is generated here
+    private static int sobolSecondDimension(int index) {
+        int result = 0;
+        for (int v = 1 << 31; index != 0; index >>>= 1, v ^= v >>> 1) {
+            if ((index & 1) != 0)
+                result ^= v;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,76 @@
+package raytracer.sampling;
+
+import utils.algebra.Vec2;
+
+/*
+    Jittered stratification of every dimension over all samples of a pixel. A 1D
+    dimension is split into one stratum per sample, a 2D dimension into a grid with
+    at least one cell per sample. Every pixel and dimension visits the strata in its
+    own random order, so the dimensions are not correlated with each other.
+
+    Samples beyond the expected count start a new round of strata.
+ */
+public class StratifiedSampler extends PixelSampler {
+
+    private final int mSamplesPerPixel;
+    private final int mGridWidth;
+    private final int mGridCells;
+
+    public StratifiedSampler(long seed, int samplesPerPixel) {
+        super(seed);
+        mSamplesPerPixel = Math.max(1, samplesPerPixel);
+        mGridWidth = (int) Math.ceil(Math.sqrt(mSamplesPerPixel));
+        mGridCells = mGridWidth * ((mSamplesPerPixel + mGridWidth - 1) / mGridWidth);
+    }
+
+    @Override
+    protected float sample1D(int dimension) {
+        int round = mSampleIndex / mSamplesPerPixel;
+        int stratum = permute(mSampleIndex % mSamplesPerPixel, mSamplesPerPixel, (int) (pixelHash(dimension) ^ SamplerMath.mix(round)));
+        return Math.min((stratum + randomFloat(dimension)) / mSamplesPerPixel, SamplerMath.ONE_MINUS_EPSILON);
+    }
+
+    @Override
+    protected void sample2D(int dimension, Vec2 out) {
+        int round = mSampleIndex / mSamplesPerPixel;
+        int cell = permute(mSampleIndex % mSamplesPerPixel, mGridCells, (int) (pixelHash(dimension) ^ SamplerMath.mix(round)));
+        int gridHeight = mGridCells / mGridWidth;
+
+        out.x = Math.min((cell % mGridWidth + randomFloat(dimension)) / mGridWidth, SamplerMath.ONE_MINUS_EPSILON);
+        out.y = Math.min((cell / mGridWidth + randomFloat(dimension + 1)) / gridHeight, SamplerMath.ONE_MINUS_EPSILON);
+    }
+
+    /*
+        Element i of a random permutation of [0, length) selected by the given seed, without
+        building the permutation. Kensler, "Correlated Multi-Jittered Sampling", 2013.
+     */
+    static int permute(int i, int length, int seed) {
+        int w = length - 1;
+        w |= w >>> 1;
+        w |= w >>> 2;
+        w |= w >>> 4;
+        w |= w >>> 8;
+        w |= w >>> 16;
+        do {
+            i ^= seed;
+            i *= 0xe170893d;
+            i ^= seed >>> 16;
+            i ^= (i & w) >>> 4;
+            i ^= seed >>> 8;
+            i *= 0x0929eb3f;
+            i ^= seed >>> 23;
+            i ^= (i & w) >>> 1;
+            i *= 1 | seed >>> 27;
+            i *= 0x6935fa69;
+            i ^= (i & w) >>> 11;
+            i *= 0x74dcb303;
+            i ^= (i & w) >>> 2;
+            i *= 0x9e501cc3;
+            i ^= (i & w) >>> 2;
+            i *= 0xc860a3df;
+            i &= w;
+            i ^= i >>> 5;
+        } while (i >= length);
+        return Integer.remainderUnsigned(i + seed, length);
+    }
+}
@@ -1,13 +1,24 @@
 package scene;
 
+import lights.AreaLight;
+import lights.Emitter;
 import lights.Light;
+import lights.MeshLight;
 import cameras.Camera;
+import scene.acceleration.BVH;
+import scene.acceleration.KernelType;
+import scene.acceleration.WideBVH;
 import scene.models.Hittable;
 import scene.models.SceneObject;
+import scene.models.TriangleModel;
+import scene.models.primitives.Plane;
 import utils.io.Log;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 
 
 public class Scene {
@@ -16,10 +27,20 @@ public class Scene {
     private final List<SceneObject> objects;
     private final List<Light> lights;
 
-    public Scene() 
+    //box test kernel of the scene tree
+    private final KernelType kernel;
+
+    private Hittable accelerationStructure;
+
+    //lights, emissive planes and models with emissive triangles, collected on first use
+    private List<Emitter> emitters;
+    private Map<SceneObject, Emitter> hittableEmitters;
+
+    public Scene(KernelType kernel)
     {
         Log.print(this, "Init");
 
+        this.kernel = kernel;
         this.cameras = new ArrayList<>();
         this.objects = new ArrayList<>();
         this.lights = new ArrayList<>();
@@ -30,14 +51,17 @@ public class Scene {
         this.cameras.add(camera);
     }
 
-    public void addObject(SceneObject object)
+    public synchronized void addObject(SceneObject object)
     {
         this.objects.add(object);
+        this.accelerationStructure = null;
+        this.emitters = null;
     }
 
-    public void addLight(Light light)
+    public synchronized void addLight(Light light)
     {
         this.lights.add(light);
+        this.emitters = null;
     }
 
     public List<SceneObject> getObjects()
@@ -45,6 +69,66 @@ public class Scene {
         return this.objects;
     }
 
+    /**
+     Wide BVH over all objects, rebuilt on first use after the objects changed
+     **/
+    public synchronized Hittable getAccelerationStructure()
+    {
+        if (this.accelerationStructure == null) {
+            long tStart = System.currentTimeMillis();
+            WideBVH bvh = new WideBVH(new BVH(this.objects), this.kernel.createNodeKernel());
+            Log.print(this, "Built BVH over " + this.objects.size() + " objects with " + bvh.getNodeCount() + " nodes in " + (System.currentTimeMillis() - tStart) + " ms");
+            this.accelerationStructure = bvh;
+        }
+        return this.accelerationStructure;
+    }
+
+    /**
+     All emitters that can be sampled directly, the lights followed by every plane with an emissive material and
+     every model with emissive triangles. Instanced models are only found by chance, their model is shared by all
+     instances and a hit of it cannot tell which instance it belongs to
+     **/
+    public synchronized List<Emitter> getEmitters()
+    {
+        if (this.emitters == null)
+            collectEmitters();
+        return this.emitters;
+    }
+
+    /**
+     Emitters that are part of the geometry by the object a hit of them reports
+     **/
+    public synchronized Map<SceneObject, Emitter> getHittableEmitters()
+    {
+        if (this.emitters == null)
+            collectEmitters();
+        return this.hittableEmitters;
+    }
+
+    private void collectEmitters()
+    {
+        List<Emitter> emitters = new ArrayList<>(this.lights);
+        Map<SceneObject, Emitter> hittableEmitters = new IdentityHashMap<>();
+
+        for (SceneObject object : this.objects) {
+            if (object instanceof Plane plane && !plane.getMaterial().getEmission().isBlack()) {
+                AreaLight areaLight = new AreaLight(plane);
+                emitters.add(areaLight);
+                hittableEmitters.put(plane, areaLight);
+            } else if (object instanceof TriangleModel model && model.getMesh() != null) {
+                //hits of mesh triangles report the model
+                MeshLight meshLight = new MeshLight(model.getMesh());
+                if (meshLight.getTriangleCount() > 0) {
+                    emitters.add(meshLight);
+                    hittableEmitters.put(model, meshLight);
+                }
+            }
+        }
+
+        this.emitters = Collections.unmodifiableList(emitters);
+        this.hittableEmitters = Collections.unmodifiableMap(hittableEmitters);
+    }
+
     public List<Light> getLights()
     {
         return this.lights;
@@ -0,0 +1,124 @@
+package scene.acceleration;
+
+import utils.algebra.Matrix4x4;
+import utils.algebra.Vec3;
+
+public class AABB {
+    public final Vec3 min;
+    public final Vec3 max;
+
+    /**
+     Standard constructor creating an empty box, growing it by any point makes it valid
+     **/
+    public AABB(){
+        this.min = new Vec3(Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY);
+        this.max = new Vec3(Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY);
+    }
+
+    /**
+     Constructor taking both corners of the box
+     **/
+    public AABB(Vec3 min, Vec3 max){
+        this.min = new Vec3(min.x, min.y, min.z);
+        this.max = new Vec3(max.x, max.y, max.z);
+    }
+
+    /**
+     Box spanning the whole space, used by objects that cannot tell their extent
+     **/
+    public static AABB infinite(){
+        return new AABB(
+                new Vec3(Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY),
+                new Vec3(Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY));
+    }
+
+    /**
+     Grow the box so that it contains the given point
+     **/
+    public AABB grow(float x, float y, float z){
+        min.x = Math.min(min.x, x);
+        min.y = Math.min(min.y, y);
+        min.z = Math.min(min.z, z);
+        max.x = Math.max(max.x, x);
+        max.y = Math.max(max.y, y);
+        max.z = Math.max(max.z, z);
+        return this;
+    }
+
+    /**
+     Grow the box so that it contains the given point
+     **/
+    public AABB grow(Vec3 point){
+        return grow(point.x, point.y, point.z);
+    }
+
+    /**
+     Grow the box so that it contains the given box
+     **/
+    public AABB grow(AABB box){
+        if (box.isEmpty())
+            return this;
+        grow(box.min);
+        return grow(box.max);
+    }
+
+    /**
+     Box is empty as long as nothing was added to it
+     **/
+    public boolean isEmpty(){
+        return min.x > max.x || min.y > max.y || min.z > max.z;
+    }
+
+    /**
+     Box has a finite extent on every axis
+     **/
+    public boolean isFinite(){
+        return Float.isFinite(min.x) && Float.isFinite(min.y) && Float.isFinite(min.z)
+                && Float.isFinite(max.x) && Float.isFinite(max.y) && Float.isFinite(max.z);
+    }
+
+    /**
+     Get center of the box
+     **/
+    public Vec3 getCenter(){
+        return new Vec3((min.x + max.x) * 0.5f, (min.y + max.y) * 0.5f, (min.z + max.z) * 0.5f);
+    }
+
+    /**
+     Get surface area of the box, the measure used by the SAH
+     **/
+    public float surfaceArea(){
+        if (isEmpty())
+            return 0f;
+        float dx = max.x - min.x;
+        float dy = max.y - min.y;
+        float dz = max.z - min.z;
+        return 2f * (dx * dy + dy * dz + dz * dx);
+    }
+
+    /**
+     Get world-space box of this local-space box by transforming all eight corners
+     **/
+    public AABB transform(Matrix4x4 matrix){
+        AABB out = new AABB();
+        if (isEmpty())
+            return out;
+
+        for (int i = 0; i < 8; i++) {
+            Vec3 corner = new Vec3(
+                    (i & 1) == 0 ? min.x : max.x,
+                    (i & 2) == 0 ? min.y : max.y,
+                    (i & 4) == 0 ? min.z : max.z);
+            out.grow(matrix.multVec3(corner, true));
+        }
+        return out;
+    }
+
+    /**
+     Print values
+     **/
+    @Override
+    public String toString(){
+        return "[ " + min + " - " + max + " ]";
+    }
+}
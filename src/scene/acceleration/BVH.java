@@ -0,0 +1,717 @@
+package scene.acceleration;
+
+import raytracer.ray.HitRecord;
+import raytracer.ray.Intersection;
+import raytracer.ray.Ray;
+import raytracer.ray.RayPacket;
+import scene.models.Hittable;
+import scene.models.SceneObject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static raytracer.ray.RayUtils.RAY_EPSYLON;
+import static raytracer.ray.RayUtils.findClosestHit;
+
+/*
+    Bounding volume hierarchy built with the surface area heuristic (SAH).
+
+    The tree is stored flattened in depth-first order: the left child of an interior
+    node always directly follows its parent, only the index of the right child is stored.
+    Leaves reference a contiguous range of the reordered object array. The flattened tree
+    can be taken out as a Layout and used again for the same objects, without a new build.
+ */
+public class BVH implements Hittable {
+
+    private static final int BIN_COUNT = 16;
+    private static final int MAX_LEAF_SIZE = 4;
+
+    //relative SAH costs of visiting a node and testing an object
+    private static final float TRAVERSAL_COST = 1f;
+    private static final float INTERSECTION_COST = 1f;
+
+    private final SceneObject[] objects;
+    private final List<SceneObject> unboundedObjects = new ArrayList<>();
+
+    //index in the list the tree was built from of every object in tree order and of the unbounded objects
+    private final int[] objectIndices;
+    private final int[] unboundedIndices;
+
+    //leaves are tested in packets of leafWidth objects, see BVH(List, int)
+    private final int leafWidth;
+    private final int maxLeafSize;
+
+    //6 floats per node: minX, minY, minZ, maxX, maxY, maxZ, null once a WideBVH took over the nodes
+    private float[] nodeBounds;
+    //leaf: index of the first object, interior: index of the right child
+    private int[] nodeOffsets;
+    //number of objects in a leaf, 0 for interior nodes
+    private int[] nodeCounts;
+    private int nodeCount;
+    private int maxDepth;
+
+    //traversal stack of the any-hit query, one per render thread
+    private final ThreadLocal<int[]> occlusionStack = ThreadLocal.withInitial(() -> new int[maxDepth + 1]);
+
+    //per object build data, dropped after the build
+    private float[] objectBounds;
+    private float[] centroids;
+
+    private final AABB bounds = new AABB();
+
+    public BVH(List<? extends SceneObject> sceneObjects) {
+        this(sceneObjects, 1);
+    }
+
+    /**
+     Build a tree whose leaves are tested leafWidth objects at a time. Leaves hold up to leafWidth
+     objects and a leaf costs the same for every object count up to that, so they are filled up.
+     **/
+    protected BVH(List<? extends SceneObject> sceneObjects, int leafWidth) {
+        this.leafWidth = leafWidth;
+        this.maxLeafSize = Math.max(MAX_LEAF_SIZE, leafWidth);
+
+        List<SceneObject> bounded = new ArrayList<>(sceneObjects.size());
+        List<AABB> boundedBoxes = new ArrayList<>(sceneObjects.size());
+        int[] boundedIndices = new int[sceneObjects.size()];
+        int[] unbounded = new int[sceneObjects.size()];
+
+        //objects without a finite extent cannot be sorted into the tree, they are tested separately
+        for (int i = 0; i < sceneObjects.size(); i++) {
+            SceneObject object = sceneObjects.get(i);
+            AABB box = object.getBounds();
+            if (box.isEmpty())
+                continue;
+            if (!box.isFinite()) {
+                unbounded[unboundedObjects.size()] = i;
+                unboundedObjects.add(object);
+                continue;
+            }
+            boundedIndices[bounded.size()] = i;
+            bounded.add(object);
+            boundedBoxes.add(box);
+        }
+        unboundedIndices = Arrays.copyOf(unbounded, unboundedObjects.size());
+
+        int count = bounded.size();
+        float[] boxes = new float[count * 6];
+        for (int i = 0; i < count; i++) {
+            AABB box = boundedBoxes.get(i);
+            boxes[i * 6] = box.min.x;
+            boxes[i * 6 + 1] = box.min.y;
+            boxes[i * 6 + 2] = box.min.z;
+            boxes[i * 6 + 3] = box.max.x;
+            boxes[i * 6 + 4] = box.max.y;
+            boxes[i * 6 + 5] = box.max.z;
+        }
+
+        int[] order = build(boxes, count);
+
+        objects = new SceneObject[count];
+        objectIndices = new int[count];
+        for (int i = 0; i < count; i++) {
+            objects[i] = bounded.get(order[i]);
+            objectIndices[i] = boundedIndices[order[i]];
+        }
+    }
+
+    /**
+     Build a tree over primitives that are no objects, like the triangles of an indexed mesh, given by 6 floats
+     of bounds each and identified by their index. The tree has no objects, subclasses test its leaves with
+     the primitive indices of getObjectIndex. Primitives without a finite extent are left out, the array
+     is used for the build
+     **/
+    protected BVH(float[] primitiveBounds, int leafWidth) {
+        this.leafWidth = leafWidth;
+        this.maxLeafSize = Math.max(MAX_LEAF_SIZE, leafWidth);
+        this.objects = new SceneObject[0];
+        this.unboundedIndices = new int[0];
+
+        //move the finite boxes to the front, keeping their primitive index
+        int primitiveCount = primitiveBounds.length / 6;
+        int[] primitives = new int[primitiveCount];
+        int count = 0;
+        for (int i = 0; i < primitiveCount; i++) {
+            if (!isFinite(primitiveBounds, i))
+                continue;
+            if (count != i)
+                System.arraycopy(primitiveBounds, i * 6, primitiveBounds, count * 6, 6);
+            primitives[count++] = i;
+        }
+
+        int[] order = build(primitiveBounds, count);
+
+        objectIndices = new int[count];
+        for (int i = 0; i < count; i++)
+            objectIndices[i] = primitives[order[i]];
+    }
+
+    /**
+     Build the nodes over the first count boxes and return the box index for every position in tree order
+     **/
+    private int[] build(float[] boxes, int count) {
+        objectBounds = boxes;
+        centroids = new float[count * 3];
+
+        for (int i = 0; i < count; i++) {
+            int b = i * 6;
+            centroids[i * 3] = (boxes[b] + boxes[b + 3]) * 0.5f;
+            centroids[i * 3 + 1] = (boxes[b + 1] + boxes[b + 4]) * 0.5f;
+            centroids[i * 3 + 2] = (boxes[b + 2] + boxes[b + 5]) * 0.5f;
+            bounds.grow(boxes[b], boxes[b + 1], boxes[b + 2]).grow(boxes[b + 3], boxes[b + 4], boxes[b + 5]);
+
+            //pad the box so flat objects like axis aligned planes keep a volume
+            for (int k = 0; k < 3; k++) {
+                boxes[b + k] -= RAY_EPSYLON;
+                boxes[b + 3 + k] += RAY_EPSYLON;
+            }
+        }
+
+        //a binary tree over n objects never has more than 2n - 1 nodes
+        int maxNodes = Math.max(1, 2 * count - 1);
+        nodeBounds = new float[maxNodes * 6];
+        nodeOffsets = new int[maxNodes];
+        nodeCounts = new int[maxNodes];
+
+        int[] order = new int[count];
+        for (int i = 0; i < count; i++)
+            order[i] = i;
+
+        if (count > 0)
+            buildNode(order, 0, count, 1);
+
+        //leaves hold several objects, most of the worst case node arrays stay unused
+        nodeBounds = Arrays.copyOf(nodeBounds, nodeCount * 6);
+        nodeOffsets = Arrays.copyOf(nodeOffsets, nodeCount);
+        nodeCounts = Arrays.copyOf(nodeCounts, nodeCount);
+
+        objectBounds = null;
+        centroids = null;
+        return order;
+    }
+
+    private static boolean isFinite(float[] boxes, int index) {
+        for (int k = index * 6; k < index * 6 + 6; k++) {
+            if (!Float.isFinite(boxes[k]))
+                return false;
+        }
+        //an empty box like the one of an object without extent
+        return boxes[index * 6] <= boxes[index * 6 + 3] && boxes[index * 6 + 1] <= boxes[index * 6 + 4] && boxes[index * 6 + 2] <= boxes[index * 6 + 5];
+    }
+
+    /**
+     Tree of a layout taken from a BVH over the same objects in the same order, see Layout.matches
+     **/
+    public BVH(List<? extends SceneObject> sceneObjects, Layout layout) {
+        this(layout, sceneObjects);
+    }
+
+    /**
+     Tree over primitives that are no objects of a layout taken from such a tree over the same primitives, see Layout.matches
+     **/
+    protected BVH(Layout layout) {
+        this(layout, null);
+    }
+
+    private BVH(Layout layout, List<? extends SceneObject> sceneObjects) {
+        this.leafWidth = layout.leafWidth();
+        this.maxLeafSize = Math.max(MAX_LEAF_SIZE, leafWidth);
+        this.objectIndices = layout.objectIndices();
+        this.unboundedIndices = layout.unboundedIndices();
+
+        objects = new SceneObject[sceneObjects != null ? objectIndices.length : 0];
+        for (int i = 0; i < objects.length; i++)
+            objects[i] = sceneObjects.get(objectIndices[i]);
+        if (sceneObjects != null) {
+            for (int index : unboundedIndices)
+                unboundedObjects.add(sceneObjects.get(index));
+        }
+
+        nodeBounds = layout.nodeBounds();
+        nodeOffsets = layout.nodeOffsets();
+        nodeCounts = layout.nodeCounts();
+        nodeCount = nodeCounts.length;
+        maxDepth = layout.maxDepth();
+
+        float[] box = layout.bounds();
+        if (objectIndices.length > 0)
+            bounds.grow(box[0], box[1], box[2]).grow(box[3], box[4], box[5]);
+    }
+
+    /*
+        The flattened tree without the objects, objects are referenced by their index in the list the
+        tree was built from. Bounds are the 6 floats of the bounds of all objects.
+     */
+    public record Layout(int leafWidth, int maxDepth, float[] bounds, float[] nodeBounds, int[] nodeOffsets, int[] nodeCounts,
+                         int[] objectIndices, int[] unboundedIndices) {
+
+        /**
+         True if the layout can be used for a list of objectCount objects by a BVH with the given leaf width
+         **/
+        public boolean matches(int objectCount, int leafWidth) {
+            if (leafWidth != this.leafWidth || objectIndices.length + unboundedIndices.length > objectCount)
+                return false;
+            for (int index : objectIndices) {
+                if (index < 0 || index >= objectCount)
+                    return false;
+            }
+            for (int index : unboundedIndices) {
+                if (index < 0 || index >= objectCount)
+                    return false;
+            }
+            if (nodeBounds.length != nodeCounts.length * 6 || nodeOffsets.length != nodeCounts.length || bounds.length != 6)
+                return false;
+
+            //leaves within the objects, right children behind their parent
+            for (int node = 0; node < nodeCounts.length; node++) {
+                boolean valid = nodeCounts[node] > 0
+                        ? nodeOffsets[node] >= 0 && nodeOffsets[node] + nodeCounts[node] <= objectIndices.length
+                        : nodeOffsets[node] > node + 1 && nodeOffsets[node] < nodeCounts.length;
+                if (!valid)
+                    return false;
+            }
+            return true;
+        }
+    }
+
+    /**
+     The flattened tree, to build the same tree again with BVH(List, Layout)
+     **/
+    public Layout getLayout() {
+        requireNodes();
+        float[] box = {bounds.min.x, bounds.min.y, bounds.min.z, bounds.max.x, bounds.max.y, bounds.max.z};
+        return new Layout(leafWidth, maxDepth, box, Arrays.copyOf(nodeBounds, nodeCount * 6),
+                Arrays.copyOf(nodeOffsets, nodeCount), Arrays.copyOf(nodeCounts, nodeCount), objectIndices, unboundedIndices);
+    }
+
+    /**
+     World-space bounds of all bounded objects in the hierarchy
+     **/
+    public AABB getBounds() {
+        return bounds;
+    }
+
+    /**
+     Number of nodes of the flattened tree
+     **/
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     Number of objects in the tree, objects without finite bounds are not counted
+     **/
+    protected int getObjectCount() {
+        return objectIndices.length;
+    }
+
+    /**
+     Index of the object at the given index in tree order in the list or primitives the tree was built from
+     **/
+    protected int getObjectIndex(int index) {
+        return objectIndices[index];
+    }
+
+    /**
+     Object at the given index in tree order, every leaf references a contiguous range
+     **/
+    protected SceneObject getObject(int index) {
+        return objects[index];
+    }
+
+    /**
+     Index of the first object of a leaf
+     **/
+    protected int getLeafFirst(int node) {
+        return nodeOffsets[node];
+    }
+
+    /**
+     Number of objects of a leaf, 0 for interior nodes
+     **/
+    protected int getLeafSize(int node) {
+        return nodeCounts[node];
+    }
+
+    /**
+     Right child of an interior node, the left child is the node that follows it
+     **/
+    protected int getRightChild(int node) {
+        return nodeOffsets[node];
+    }
+
+    /**
+     Component of the bounds of a node, in the order minX, minY, minZ, maxX, maxY, maxZ
+     **/
+    protected float getNodeBound(int node, int component) {
+        return nodeBounds[node * 6 + component];
+    }
+
+    @Override
+    public Intersection hit(Ray ray) {
+        HitRecord record = new HitRecord();
+        return intersect(ray, record) ? record.toIntersection(ray) : null;
+    }
+
+    @Override
+    public boolean intersect(Ray ray, HitRecord record) {
+        requireNodes();
+
+        //the unbounded objects already shorten the ray before the tree is entered
+        boolean found = intersectUnbounded(ray, record);
+
+        if (nodeCount == 0)
+            return found;
+
+        float originX = ray.origin().x, originY = ray.origin().y, originZ = ray.origin().z;
+        float invDirX = 1f / ray.direction().x, invDirY = 1f / ray.direction().y, invDirZ = 1f / ray.direction().z;
+        float tMin = ray.tMin();
+
+        int[] stack = new int[maxDepth + 1];
+        float[] stackDistances = new float[maxDepth + 1];
+        int stackSize = 0;
+        int node = 0;
+
+        if (intersectNode(0, originX, originY, originZ, invDirX, invDirY, invDirZ, tMin, ray.tMax()) == Float.POSITIVE_INFINITY)
+            return found;
+
+        while (true) {
+            int count = nodeCounts[node];
+            if (count > 0) {
+                found |= intersectLeaf(nodeOffsets[node], count, ray, record);
+            } else {
+                //visit the nearer child first, the farther one is pushed to the stack
+                int left = node + 1;
+                int right = nodeOffsets[node];
+                float tLeft = intersectNode(left, originX, originY, originZ, invDirX, invDirY, invDirZ, tMin, ray.tMax());
+                float tRight = intersectNode(right, originX, originY, originZ, invDirX, invDirY, invDirZ, tMin, ray.tMax());
+
+                if (tLeft > tRight) {
+                    int swapNode = left; left = right; right = swapNode;
+                    float swapT = tLeft; tLeft = tRight; tRight = swapT;
+                }
+
+                if (tLeft != Float.POSITIVE_INFINITY) {
+                    if (tRight != Float.POSITIVE_INFINITY) {
+                        stack[stackSize] = right;
+                        stackDistances[stackSize++] = tRight;
+                    }
+                    node = left;
+                    continue;
+                }
+            }
+
+            //skip nodes that lie behind a hit found since they were pushed
+            do {
+                if (stackSize == 0)
+                    return found;
+                node = stack[--stackSize];
+            } while (stackDistances[stackSize] > ray.tMax());
+        }
+    }
+
+    /*
+        Any-hit traversal: the order of the children does not matter, the first hit inside
+        the interval of the ray ends the query. The stack is kept per thread, so the query allocates nothing.
+     */
+    @Override
+    public boolean occluded(Ray ray) {
+        requireNodes();
+
+        if (occludedUnbounded(ray))
+            return true;
+
+        if (nodeCount == 0)
+            return false;
+
+        float originX = ray.origin().x, originY = ray.origin().y, originZ = ray.origin().z;
+        float invDirX = 1f / ray.direction().x, invDirY = 1f / ray.direction().y, invDirZ = 1f / ray.direction().z;
+        float tMin = ray.tMin(), tMax = ray.tMax();
+
+        if (intersectNode(0, originX, originY, originZ, invDirX, invDirY, invDirZ, tMin, tMax) == Float.POSITIVE_INFINITY)
+            return false;
+
+        int[] stack = occlusionStack.get();
+        int stackSize = 0;
+        int node = 0;
+
+        while (true) {
+            int count = nodeCounts[node];
+            if (count > 0) {
+                if (occludedLeaf(nodeOffsets[node], count, ray))
+                    return true;
+            } else {
+                int left = node + 1;
+                int right = nodeOffsets[node];
+                boolean hitLeft = intersectNode(left, originX, originY, originZ, invDirX, invDirY, invDirZ, tMin, tMax) != Float.POSITIVE_INFINITY;
+                boolean hitRight = intersectNode(right, originX, originY, originZ, invDirX, invDirY, invDirZ, tMin, tMax) != Float.POSITIVE_INFINITY;
+
+                if (hitLeft) {
+                    if (hitRight)
+                        stack[stackSize++] = right;
+                    node = left;
+                    continue;
+                }
+                if (hitRight) {
+                    node = right;
+                    continue;
+                }
+            }
+
+            if (stackSize == 0)
+                return false;
+            node = stack[--stackSize];
+        }
+    }
+
+    /**
+     Drop the nodes once a WideBVH was collapsed from them. The wide tree keeps its own copy of the leaf ranges and
+     only uses the leaf and unbounded tests of this tree afterwards, its own traversal and layout are gone
+     **/
+    void releaseNodes() {
+        nodeBounds = null;
+        nodeOffsets = null;
+        nodeCounts = null;
+    }
+
+    private void requireNodes() {
+        if (nodeBounds == null)
+            throw new IllegalStateException("The nodes of the tree were released to a WideBVH");
+    }
+
+    /**
+     Closest-hit test of the objects outside of the tree, see Hittable.intersect
+     **/
+    protected boolean intersectUnbounded(Ray ray, HitRecord record) {
+        return findClosestHit(unboundedObjects, ray, record);
+    }
+
+    /**
+     Any-hit test of the objects outside of the tree
+     **/
+    protected boolean occludedUnbounded(Ray ray) {
+        for (SceneObject object : unboundedObjects) {
+            if (object.occluded(ray))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     Closest-hit test of the objects of a leaf, see Hittable.intersect
+     **/
+    protected boolean intersectLeaf(int first, int count, Ray ray, HitRecord record) {
+        //objects only replace the record with hits closer than tMax and shorten the ray to them
+        boolean found = false;
+        for (int i = first; i < first + count; i++)
+            found |= objects[i].intersect(ray, record);
+        return found;
+    }
+
+    /**
+     Closest-hit test of the objects of a leaf for the rays firstRay to lastRay of a packet,
+     every object gets the whole range so nested structures can trace it as a packet as well
+     **/
+    protected void intersectLeafPacket(int first, int count, RayPacket packet, int firstRay, int lastRay) {
+        for (int i = first; i < first + count; i++)
+            objects[i].intersectPacket(packet, firstRay, lastRay);
+    }
+
+    /**
+     Any-hit test of the objects of a leaf
+     **/
+    protected boolean occludedLeaf(int first, int count, Ray ray) {
+        for (int i = first; i < first + count; i++) {
+            if (objects[i].occluded(ray))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     Slab test of a node box against the interval [minDistance, maxDistance], returns the entry distance or infinity on a miss
+     **/
+    private float intersectNode(int node, float originX, float originY, float originZ, float invDirX, float invDirY, float invDirZ, float minDistance, float maxDistance) {
+        int b = node * 6;
+        float tx1 = (nodeBounds[b] - originX) * invDirX;
+        float tx2 = (nodeBounds[b + 3] - originX) * invDirX;
+        float ty1 = (nodeBounds[b + 1] - originY) * invDirY;
+        float ty2 = (nodeBounds[b + 4] - originY) * invDirY;
+        float tz1 = (nodeBounds[b + 2] - originZ) * invDirZ;
+        float tz2 = (nodeBounds[b + 5] - originZ) * invDirZ;
+
+        float tNear = Math.max(Math.max(Math.min(tx1, tx2), Math.min(ty1, ty2)), Math.min(tz1, tz2));
+        float tFar = Math.min(Math.min(Math.max(tx1, tx2), Math.max(ty1, ty2)), Math.max(tz1, tz2));
+
+        //comparisons with NaN from 0 * infinity are false, such slabs never cull the node
+        if (tNear > tFar || tFar < minDistance || tNear > maxDistance)
+            return Float.POSITIVE_INFINITY;
+
+        return tNear > minDistance ? tNear : minDistance;
+    }
+
+    /**
+     Recursively build the node for the objects order[start..end) and return its index
+     **/
+    private int buildNode(int[] order, int start, int end, int depth) {
+        int node = nodeCount++;
+        maxDepth = Math.max(maxDepth, depth);
+
+        //node bounds and centroid bounds
+        float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY, minZ = Float.POSITIVE_INFINITY;
+        float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY, maxZ = Float.NEGATIVE_INFINITY;
+        float[] centroidMin = {Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY};
+        float[] centroidMax = {Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY};
+
+        for (int i = start; i < end; i++) {
+            int b = order[i] * 6;
+            minX = Math.min(minX, objectBounds[b]);
+            minY = Math.min(minY, objectBounds[b + 1]);
+            minZ = Math.min(minZ, objectBounds[b + 2]);
+            maxX = Math.max(maxX, objectBounds[b + 3]);
+            maxY = Math.max(maxY, objectBounds[b + 4]);
+            maxZ = Math.max(maxZ, objectBounds[b + 5]);
+            for (int axis = 0; axis < 3; axis++) {
+                float c = centroids[order[i] * 3 + axis];
+                centroidMin[axis] = Math.min(centroidMin[axis], c);
+                centroidMax[axis] = Math.max(centroidMax[axis], c);
+            }
+        }
+
+        int nb = node * 6;
+        nodeBounds[nb] = minX;
+        nodeBounds[nb + 1] = minY;
+        nodeBounds[nb + 2] = minZ;
+        nodeBounds[nb + 3] = maxX;
+        nodeBounds[nb + 4] = maxY;
+        nodeBounds[nb + 5] = maxZ;
+
+        int count = end - start;
+        if (count == 1) {
+            makeLeaf(node, start, count);
+            return node;
+        }
+
+        //find the cheapest binned split over all three axes
+        float bestCost = Float.POSITIVE_INFINITY;
+        int bestAxis = -1;
+        int bestSplit = -1;
+
+        int[] binCounts = new int[BIN_COUNT];
+        float[] binBounds = new float[BIN_COUNT * 6];
+        float[] rightAreas = new float[BIN_COUNT];
+
+        for (int axis = 0; axis < 3; axis++) {
+            float extent = centroidMax[axis] - centroidMin[axis];
+            if (extent <= 0f)
+                continue;
+
+            Arrays.fill(binCounts, 0);
+            resetBounds(binBounds, BIN_COUNT);
+
+            float scale = BIN_COUNT / extent;
+            for (int i = start; i < end; i++) {
+                int bin = binIndex(centroids[order[i] * 3 + axis], centroidMin[axis], scale);
+                binCounts[bin]++;
+                growBounds(binBounds, bin, objectBounds, order[i]);
+            }
+
+            //sweep from the right to get the area of every right partition
+            float[] sweep = new float[6];
+            resetBounds(sweep, 1);
+            for (int bin = BIN_COUNT - 1; bin > 0; bin--) {
+                growBounds(sweep, 0, binBounds, bin);
+                rightAreas[bin] = area(sweep, 0);
+            }
+
+            //sweep from the left and evaluate the cost of splitting behind every bin
+            resetBounds(sweep, 1);
+            int leftCount = 0;
+            for (int bin = 0; bin < BIN_COUNT - 1; bin++) {
+                growBounds(sweep, 0, binBounds, bin);
+                leftCount += binCounts[bin];
+                int rightCount = count - leftCount;
+                if (leftCount == 0 || rightCount == 0)
+                    continue;
+
+                float cost = area(sweep, 0) * leftCount + rightAreas[bin + 1] * rightCount;
+                if (cost < bestCost) {
+                    bestCost = cost;
+                    bestAxis = axis;
+                    bestSplit = bin;
+                }
+            }
+        }
+
+        float nodeArea = area(nodeBounds, node);
+        float leafCost = INTERSECTION_COST * ((count + leafWidth - 1) / leafWidth);
+        float splitCost = nodeArea > 0f
+                ? TRAVERSAL_COST + INTERSECTION_COST * bestCost / nodeArea
+                : Float.POSITIVE_INFINITY;
+
+        if (count <= maxLeafSize && leafCost <= splitCost) {
+            makeLeaf(node, start, count);
+            return node;
+        }
+
+        int mid;
+        if (bestAxis == -1) {
+            //all centroids coincide, split in the middle of the range
+            mid = start + count / 2;
+        } else {
+            float scale = BIN_COUNT / (centroidMax[bestAxis] - centroidMin[bestAxis]);
+            int i = start;
+            int j = end - 1;
+            while (i <= j) {
+                if (binIndex(centroids[order[i] * 3 + bestAxis], centroidMin[bestAxis], scale) <= bestSplit) {
+                    i++;
+                } else {
+                    int swap = order[i]; order[i] = order[j]; order[j] = swap;
+                    j--;
+                }
+            }
+            mid = i;
+        }
+
+        buildNode(order, start, mid, depth + 1);
+        nodeOffsets[node] = buildNode(order, mid, end, depth + 1);
+        nodeCounts[node] = 0;
+        return node;
+    }
+
+    private void makeLeaf(int node, int first, int count) {
+        nodeOffsets[node] = first;
+        nodeCounts[node] = count;
+    }
+
+    private static int binIndex(float centroid, float centroidMin, float scale) {
+        return Math.min(BIN_COUNT - 1, (int) ((centroid - centroidMin) * scale));
+    }
+
+    private static void resetBounds(float[] boxes, int count) {
+        for (int i = 0; i < count; i++) {
+            boxes[i * 6] = boxes[i * 6 + 1] = boxes[i * 6 + 2] = Float.POSITIVE_INFINITY;
+            boxes[i * 6 + 3] = boxes[i * 6 + 4] = boxes[i * 6 + 5] = Float.NEGATIVE_INFINITY;
+        }
+    }
+
+    private static void growBounds(float[] boxes, int index, float[] source, int sourceIndex) {
+        int b = index * 6;
+        int s = sourceIndex * 6;
+        for (int k = 0; k < 3; k++) {
+            boxes[b + k] = Math.min(boxes[b + k], source[s + k]);
+            boxes[b + 3 + k] = Math.max(boxes[b + 3 + k], source[s + 3 + k]);
+        }
+    }
+
+    private static float area(float[] boxes, int index) {
+        int b = index * 6;
+        float dx = boxes[b + 3] - boxes[b];
+        float dy = boxes[b + 4] - boxes[b + 1];
+        float dz = boxes[b + 5] - boxes[b + 2];
+        if (dx < 0 || dy < 0 || dz < 0)
+            return 0f;
+        return 2f * (dx * dy + dy * dz + dz * dx);
+    }
+}
@@ -0,0 +1,56 @@
+package scene.acceleration;
+
+import utils.io.Log;
+
+/*
+    The kernels the acceleration structures use for their innermost loops, the triangle
+    tests of a TriangleBVH and the child box tests of a WideBVH
+ */
+public enum KernelType {
+    //one triangle or box after the other
+    SCALAR,
+    //packets of triangles and boxes with the Vector API, needs "--add-modules jdk.incubator.vector" at compile and run time
+    SIMD;
+
+    private static final String VECTOR_MODULE = "jdk.incubator.vector";
+
+    //the fallback is reported once, not for every model
+    private static boolean fallbackReported;
+
+    /**
+     Triangle kernel of this type, SIMD falls back to the scalar kernel if the vector module was not added to the JVM
+     **/
+    public TriangleKernel createTriangleKernel() {
+        if (useSimd())
+            return new VectorTriangleKernel();
+        return new ScalarTriangleKernel();
+    }
+
+    /**
+     Box kernel of this type, with the same fallback as the triangle kernel
+     **/
+    public NodeKernel createNodeKernel() {
+        if (useSimd())
+            return new VectorNodeKernel();
+        return new ScalarNodeKernel();
+    }
+
+    private boolean useSimd() {
+        if (this != SIMD)
+            return false;
+        if (isSimdAvailable())
+            return true;
+        if (!fallbackReported) {
+            fallbackReported = true;
+            Log.warn(this, "Module " + VECTOR_MODULE + " is not available, using the scalar kernels");
+        }
+        return false;
+    }
+
+    /**
+     True if the JVM was started with the vector module, the SIMD kernels must not be loaded otherwise
+     **/
+    public static boolean isSimdAvailable() {
+        return ModuleLayer.boot().findModule(VECTOR_MODULE).isPresent();
+    }
+}
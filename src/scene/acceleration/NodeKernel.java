@@ -0,0 +1,21 @@
+package scene.acceleration;
+
+/*
+    Slab test of all child boxes of a WideBVH node. The boxes of a node are stored as
+    six runs of width floats: minX, minY, minZ, maxX, maxY and maxZ of every child.
+    Implementations are selected with KernelType.
+ */
+public interface NodeKernel {
+
+    /**
+     Number of children of a node
+     **/
+    int width();
+
+    /**
+     Test the children of the node whose boxes start at offset against the interval [minDistance, maxDistance].
+     Returns a bit per child that was hit and writes the entry distances of the children to distances.
+     **/
+    int intersectChildren(float[] boxes, int offset, float originX, float originY, float originZ,
+                          float invDirX, float invDirY, float invDirZ, float minDistance, float maxDistance, float[] distances);
+}
@@ -0,0 +1,40 @@
+package scene.acceleration;
+
+/*
+    Tests one child box after the other, used where the Vector API is not available
+ */
+public final class ScalarNodeKernel implements NodeKernel {
+
+    private static final int WIDTH = 4;
+
+    @Override
+    public int width() {
+        return WIDTH;
+    }
+
+    @Override
+    public int intersectChildren(float[] boxes, int offset, float originX, float originY, float originZ,
+                                 float invDirX, float invDirY, float invDirZ, float minDistance, float maxDistance, float[] distances) {
+        int hits = 0;
+        for (int child = 0; child < WIDTH; child++) {
+            int b = offset + child;
+            float tx1 = (boxes[b] - originX) * invDirX;
+            float tx2 = (boxes[b + 3 * WIDTH] - originX) * invDirX;
+            float ty1 = (boxes[b + WIDTH] - originY) * invDirY;
+            float ty2 = (boxes[b + 4 * WIDTH] - originY) * invDirY;
+            float tz1 = (boxes[b + 2 * WIDTH] - originZ) * invDirZ;
+            float tz2 = (boxes[b + 5 * WIDTH] - originZ) * invDirZ;
+
+            float tNear = Math.max(Math.max(Math.min(tx1, tx2), Math.min(ty1, ty2)), Math.min(tz1, tz2));
+            float tFar = Math.min(Math.min(Math.max(tx1, tx2), Math.max(ty1, ty2)), Math.max(tz1, tz2));
+
+            //comparisons with NaN from 0 * infinity are false, such slabs never cull the box
+            if (tNear > tFar || tFar < minDistance || tNear > maxDistance)
+                continue;
+
+            distances[child] = tNear > minDistance ? tNear : minDistance;
+            hits |= 1 << child;
+        }
+        return hits;
+    }
+}
@@ -0,0 +1,76 @@
+package scene.acceleration;
+
+import raytracer.ray.HitRecord;
+import raytracer.ray.Ray;
+import utils.algebra.Vec3;
+
+import static raytracer.ray.RayUtils.RAY_EPSYLON;
+
+/*
+    Tests one triangle after the other, used where the Vector API is not available
+ */
+public final class ScalarTriangleKernel implements TriangleKernel {
+
+    @Override
+    public int width() {
+        return 1;
+    }
+
+    @Override
+    public boolean intersect(TriangleBuffer triangles, int slot, int count, Ray ray, HitRecord record) {
+        boolean found = false;
+        for (int i = slot; i < slot + count; i++)
+            found |= test(triangles, i, ray, record);
+        return found;
+    }
+
+    @Override
+    public boolean occluded(TriangleBuffer triangles, int slot, int count, Ray ray) {
+        for (int i = slot; i < slot + count; i++) {
+            if (test(triangles, i, ray, null))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     Möller–Trumbore test of one slot, with a record the ray is shortened and the barycentrics are kept
+     **/
+    private static boolean test(TriangleBuffer b, int i, Ray ray, HitRecord record) {
+        Vec3 origin = ray.origin();
+        Vec3 direction = ray.direction();
+
+        // h = direction x edge2
+        float hX = direction.y * b.edge2Z[i] - b.edge2Y[i] * direction.z;
+        float hY = direction.z * b.edge2X[i] - b.edge2Z[i] * direction.x;
+        float hZ = direction.x * b.edge2Y[i] - b.edge2X[i] * direction.y;
+        float a = b.edge1X[i] * hX + b.edge1Y[i] * hY + b.edge1Z[i] * hZ;
+
+        if (a > -RAY_EPSYLON && a < RAY_EPSYLON)
+            return false;
+
+        float f = 1.0f / a;
+        float sX = origin.x - b.vertexX[i], sY = origin.y - b.vertexY[i], sZ = origin.z - b.vertexZ[i];
+        float u = f * (sX * hX + sY * hY + sZ * hZ);
+        if (u < 0.0f || u > 1.0f)
+            return false;
+
+        // q = s x edge1
+        float qX = sY * b.edge1Z[i] - b.edge1Y[i] * sZ;
+        float qY = sZ * b.edge1X[i] - b.edge1Z[i] * sX;
+        float qZ = sX * b.edge1Y[i] - b.edge1X[i] * sY;
+        float v = f * (direction.x * qX + direction.y * qY + direction.z * qZ);
+        if (v < 0.0f || u + v > 1.0f)
+            return false;
+
+        float t = f * (b.edge2X[i] * qX + b.edge2Y[i] * qY + b.edge2Z[i] * qZ);
+        if (!ray.contains(t))
+            return false;
+
+        if (record != null) {
+            ray.setTMax(t);
+            record.set(b.owner, b.triangles[i], t, u, v);
+        }
+        return true;
+    }
+}
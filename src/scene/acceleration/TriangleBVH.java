@@ -0,0 +1,91 @@
+package scene.acceleration;
+
+import raytracer.ray.HitRecord;
+import raytracer.ray.Ray;
+import raytracer.ray.RayPacket;
+import scene.models.SceneObject;
+import scene.models.TriangleMesh;
+
+/*
+    BVH over the triangles of a mesh whose leaves are tested by a TriangleKernel.
+
+    The leaves are built as wide as the kernel and their triangles are copied into a
+    TriangleBuffer in tree order. Every leaf starts at a multiple of the kernel width
+    and is padded up to the next one, so the kernel always loads full vectors.
+ */
+public final class TriangleBVH extends BVH {
+
+    private final TriangleKernel kernel;
+    private final TriangleBuffer buffer;
+
+    //buffer slot of every leaf, by the index of its first triangle in tree order
+    private final int[] leafSlots;
+
+    /**
+     Tree over the triangles of a mesh, hits are recorded with the owner and the index of the triangle
+     **/
+    public TriangleBVH(TriangleMesh mesh, SceneObject owner, TriangleKernel kernel) {
+        super(mesh.computeTriangleBounds(), kernel.width());
+        this.kernel = kernel;
+        leafSlots = new int[getObjectCount()];
+        buffer = fillBuffer(mesh, owner, leafSlots);
+    }
+
+    /**
+     Tree of a layout taken from a TriangleBVH over the same mesh, with a kernel of the same width
+     **/
+    public TriangleBVH(TriangleMesh mesh, SceneObject owner, TriangleKernel kernel, Layout layout) {
+        super(layout);
+        this.kernel = kernel;
+        leafSlots = new int[getObjectCount()];
+        buffer = fillBuffer(mesh, owner, leafSlots);
+    }
+
+    /**
+     Copy the triangles of all leaves into a buffer in tree order, padded to the kernel width, and note where every leaf starts
+     **/
+    private TriangleBuffer fillBuffer(TriangleMesh mesh, SceneObject owner, int[] leafSlots) {
+        int width = kernel.width();
+        int slots = 0;
+        for (int node = 0; node < getNodeCount(); node++)
+            slots += padded(getLeafSize(node), width);
+
+        TriangleBuffer buffer = new TriangleBuffer(slots, owner);
+
+        int slot = 0;
+        for (int node = 0; node < getNodeCount(); node++) {
+            int count = getLeafSize(node);
+            if (count == 0)
+                continue;
+
+            int first = getLeafFirst(node);
+            leafSlots[first] = slot;
+            for (int i = 0; i < count; i++)
+                buffer.set(slot + i, mesh, getObjectIndex(first + i));
+            slot += padded(count, width);
+        }
+        return buffer;
+    }
+
+    @Override
+    protected boolean intersectLeaf(int first, int count, Ray ray, HitRecord record) {
+        return kernel.intersect(buffer, leafSlots[first], count, ray, record);
+    }
+
+    @Override
+    protected void intersectLeafPacket(int first, int count, RayPacket packet, int firstRay, int lastRay) {
+        //the kernel already tests the triangles of the leaf side by side, the rays take turns
+        int slot = leafSlots[first];
+        for (int i = firstRay; i <= lastRay; i++)
+            kernel.intersect(buffer, slot, count, packet.getRay(i), packet.getRecord(i));
+    }
+
+    @Override
+    protected boolean occludedLeaf(int first, int count, Ray ray) {
+        return kernel.occluded(buffer, leafSlots[first], count, ray);
+    }
+
+    private static int padded(int count, int width) {
+        return (count + width - 1) / width * width;
+    }
+}
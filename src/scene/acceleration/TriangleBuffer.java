@@ -0,0 +1,61 @@
+package scene.acceleration;
+
+import scene.models.SceneObject;
+import scene.models.TriangleMesh;
+
+import java.util.Arrays;
+
+/*
+    Triangles stored as structure of arrays: one array per coordinate of the first vertex
+    and of the two edges leaving it, so a kernel can load the same coordinate of
+    consecutive triangles with a single vector load.
+
+    Empty slots keep zero edges. Their determinant is zero, so every kernel rejects them
+    like a triangle parallel to the ray, which lets leaves be padded to the vector width.
+ */
+public final class TriangleBuffer {
+    final float[] vertexX, vertexY, vertexZ;
+    final float[] edge1X, edge1Y, edge1Z;
+    final float[] edge2X, edge2Y, edge2Z;
+
+    //index of the triangle of every slot in its mesh, -1 for padding
+    final int[] triangles;
+    //object a hit is recorded with, it builds the intersection from the index
+    final SceneObject owner;
+
+    public TriangleBuffer(int capacity, SceneObject owner) {
+        this.owner = owner;
+        vertexX = new float[capacity];
+        vertexY = new float[capacity];
+        vertexZ = new float[capacity];
+        edge1X = new float[capacity];
+        edge1Y = new float[capacity];
+        edge1Z = new float[capacity];
+        edge2X = new float[capacity];
+        edge2Y = new float[capacity];
+        edge2Z = new float[capacity];
+        triangles = new int[capacity];
+        Arrays.fill(triangles, -1);
+    }
+
+    public int capacity() {
+        return triangles.length;
+    }
+
+    public void set(int slot, TriangleMesh mesh, int triangle) {
+        float[] positions = mesh.getPositions();
+        int[] indices = mesh.getPositionIndices();
+        int v0 = indices[triangle * 3] * 3, v1 = indices[triangle * 3 + 1] * 3, v2 = indices[triangle * 3 + 2] * 3;
+
+        vertexX[slot] = positions[v0];
+        vertexY[slot] = positions[v0 + 1];
+        vertexZ[slot] = positions[v0 + 2];
+        edge1X[slot] = positions[v1] - positions[v0];
+        edge1Y[slot] = positions[v1 + 1] - positions[v0 + 1];
+        edge1Z[slot] = positions[v1 + 2] - positions[v0 + 2];
+        edge2X[slot] = positions[v2] - positions[v0];
+        edge2Y[slot] = positions[v2 + 1] - positions[v0 + 1];
+        edge2Z[slot] = positions[v2 + 2] - positions[v0 + 2];
+        triangles[slot] = triangle;
+    }
+}
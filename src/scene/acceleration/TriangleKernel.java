@@ -0,0 +1,26 @@
+package scene.acceleration;
+
+import raytracer.ray.HitRecord;
+import raytracer.ray.Ray;
+
+/*
+    Möller–Trumbore test of a run of triangles in a TriangleBuffer, the innermost loop of
+    every triangle mesh query. Implementations are selected with KernelType.
+ */
+public interface TriangleKernel {
+
+    /**
+     Number of triangles tested at once, leaves are packed to a multiple of it
+     **/
+    int width();
+
+    /**
+     Closest hit among the count triangles starting at slot, see Hittable.intersect
+     **/
+    boolean intersect(TriangleBuffer triangles, int slot, int count, Ray ray, HitRecord record);
+
+    /**
+     True if any of the count triangles starting at slot is hit inside the interval of the ray
+     **/
+    boolean occluded(TriangleBuffer triangles, int slot, int count, Ray ray);
+}
@@ -0,0 +1,51 @@
+package scene.acceleration;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/*
+    Tests all child boxes of a node with one slab test over the lanes of a vector: 8 children
+    (an OBVH) where the CPU has 256 bit vectors, 4 children (a QBVH) with 128 bit vectors.
+    Wider vectors are not used, more than 8 children rarely pay off.
+
+    Needs the jdk.incubator.vector module, only create it through KernelType.
+ */
+public final class VectorNodeKernel implements NodeKernel {
+
+    private static final VectorSpecies<Float> SPECIES = VectorSpecies.of(float.class,
+            VectorShape.forBitSize(FloatVector.SPECIES_PREFERRED.length() >= 8 ? 256 : 128));
+
+    @Override
+    public int width() {
+        return SPECIES.length();
+    }
+
+    @Override
+    public int intersectChildren(float[] boxes, int offset, float originX, float originY, float originZ,
+                                 float invDirX, float invDirY, float invDirZ, float minDistance, float maxDistance, float[] distances) {
+        int width = SPECIES.length();
+        FloatVector tx1 = FloatVector.fromArray(SPECIES, boxes, offset).sub(originX).mul(invDirX);
+        FloatVector tx2 = FloatVector.fromArray(SPECIES, boxes, offset + 3 * width).sub(originX).mul(invDirX);
+        FloatVector ty1 = FloatVector.fromArray(SPECIES, boxes, offset + width).sub(originY).mul(invDirY);
+        FloatVector ty2 = FloatVector.fromArray(SPECIES, boxes, offset + 4 * width).sub(originY).mul(invDirY);
+        FloatVector tz1 = FloatVector.fromArray(SPECIES, boxes, offset + 2 * width).sub(originZ).mul(invDirZ);
+        FloatVector tz2 = FloatVector.fromArray(SPECIES, boxes, offset + 5 * width).sub(originZ).mul(invDirZ);
+
+        FloatVector tNear = tx1.min(tx2).max(ty1.min(ty2)).max(tz1.min(tz2));
+        FloatVector tFar = tx1.max(tx2).min(ty1.max(ty2)).min(tz1.max(tz2));
+
+        //same rejection as the scalar test, lanes with NaN are never culled
+        VectorMask<Float> miss = tNear.compare(VectorOperators.GT, tFar)
+                .or(tFar.compare(VectorOperators.LT, minDistance))
+                .or(tNear.compare(VectorOperators.GT, maxDistance));
+
+        FloatVector.broadcast(SPECIES, minDistance)
+                .blend(tNear, tNear.compare(VectorOperators.GT, minDistance))
+                .intoArray(distances, 0);
+
+        return (int) miss.not().toLong();
+    }
+}
@@ -0,0 +1,102 @@
+package scene.acceleration;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+import raytracer.ray.HitRecord;
+import raytracer.ray.Ray;
+import utils.algebra.Vec3;
+
+import static raytracer.ray.RayUtils.RAY_EPSYLON;
+
+/*
+    Tests a whole packet of triangles with one pass of the Möller–Trumbore test over the
+    lanes of the widest vector the CPU supports: 4 triangles with SSE or NEON, 8 with AVX2
+    and 16 with AVX-512. The rejections of the scalar test become lane masks, the closest
+    remaining lane is found with a min reduction.
+
+    Needs the jdk.incubator.vector module, only create it through KernelType.
+ */
+public final class VectorTriangleKernel implements TriangleKernel {
+
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+
+    @Override
+    public int width() {
+        return SPECIES.length();
+    }
+
+    @Override
+    public boolean intersect(TriangleBuffer triangles, int slot, int count, Ray ray, HitRecord record) {
+        boolean found = false;
+        for (int i = slot; i < slot + count; i += SPECIES.length())
+            found |= test(triangles, i, ray, record);
+        return found;
+    }
+
+    @Override
+    public boolean occluded(TriangleBuffer triangles, int slot, int count, Ray ray) {
+        for (int i = slot; i < slot + count; i += SPECIES.length()) {
+            if (test(triangles, i, ray, null))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     Test the packet starting at slot i, with a record the ray is shortened to the closest hit and its barycentrics are kept
+     **/
+    private static boolean test(TriangleBuffer b, int i, Ray ray, HitRecord record) {
+        Vec3 origin = ray.origin();
+        Vec3 direction = ray.direction();
+
+        FloatVector edge1X = FloatVector.fromArray(SPECIES, b.edge1X, i);
+        FloatVector edge1Y = FloatVector.fromArray(SPECIES, b.edge1Y, i);
+        FloatVector edge1Z = FloatVector.fromArray(SPECIES, b.edge1Z, i);
+        FloatVector edge2X = FloatVector.fromArray(SPECIES, b.edge2X, i);
+        FloatVector edge2Y = FloatVector.fromArray(SPECIES, b.edge2Y, i);
+        FloatVector edge2Z = FloatVector.fromArray(SPECIES, b.edge2Z, i);
+
+        // h = direction x edge2, a is the determinant
+        FloatVector hX = edge2Z.mul(direction.y).sub(edge2Y.mul(direction.z));
+        FloatVector hY = edge2X.mul(direction.z).sub(edge2Z.mul(direction.x));
+        FloatVector hZ = edge2Y.mul(direction.x).sub(edge2X.mul(direction.y));
+        FloatVector a = edge1X.mul(hX).add(edge1Y.mul(hY)).add(edge1Z.mul(hZ));
+
+        //rays parallel to the triangle and padding slots are rejected here
+        VectorMask<Float> mask = a.abs().compare(VectorOperators.GE, RAY_EPSYLON);
+        if (!mask.anyTrue())
+            return false;
+
+        FloatVector f = FloatVector.broadcast(SPECIES, 1.0f).div(a);
+        FloatVector sX = FloatVector.broadcast(SPECIES, origin.x).sub(FloatVector.fromArray(SPECIES, b.vertexX, i));
+        FloatVector sY = FloatVector.broadcast(SPECIES, origin.y).sub(FloatVector.fromArray(SPECIES, b.vertexY, i));
+        FloatVector sZ = FloatVector.broadcast(SPECIES, origin.z).sub(FloatVector.fromArray(SPECIES, b.vertexZ, i));
+        FloatVector u = f.mul(sX.mul(hX).add(sY.mul(hY)).add(sZ.mul(hZ)));
+        mask = mask.and(u.compare(VectorOperators.GE, 0.0f)).and(u.compare(VectorOperators.LE, 1.0f));
+
+        // q = s x edge1
+        FloatVector qX = sY.mul(edge1Z).sub(edge1Y.mul(sZ));
+        FloatVector qY = sZ.mul(edge1X).sub(edge1Z.mul(sX));
+        FloatVector qZ = sX.mul(edge1Y).sub(edge1X.mul(sY));
+        FloatVector v = f.mul(qX.mul(direction.x).add(qY.mul(direction.y)).add(qZ.mul(direction.z)));
+        mask = mask.and(v.compare(VectorOperators.GE, 0.0f)).and(u.add(v).compare(VectorOperators.LE, 1.0f));
+
+        FloatVector t = f.mul(edge2X.mul(qX).add(edge2Y.mul(qY)).add(edge2Z.mul(qZ)));
+        mask = mask.and(t.compare(VectorOperators.GT, ray.tMin())).and(t.compare(VectorOperators.LT, ray.tMax()));
+        if (!mask.anyTrue())
+            return false;
+        if (record == null)
+            return true;
+
+        //the first lane with the smallest distance wins, like in the scalar loop
+        FloatVector hits = FloatVector.broadcast(SPECIES, Float.POSITIVE_INFINITY).blend(t, mask);
+        float closest = hits.reduceLanes(VectorOperators.MIN);
+        int lane = hits.compare(VectorOperators.EQ, closest).firstTrue();
+
+        ray.setTMax(closest);
+        record.set(b.owner, b.triangles[i + lane], closest, u.lane(lane), v.lane(lane));
+        return true;
+    }
+}
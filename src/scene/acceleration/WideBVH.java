@@ -0,0 +1,511 @@
+package scene.acceleration;
+
+import raytracer.ray.HitRecord;
+import raytracer.ray.Intersection;
+import raytracer.ray.Ray;
+import raytracer.ray.RayPacket;
+import scene.models.Hittable;
+
+import java.util.Arrays;
+
+/*
+    Multi-way BVH collapsed from a binary BVH, 4 children per node (QBVH) or 8 (OBVH)
+    depending on the NodeKernel.
+
+    Every node is built from a subtree of the binary tree: starting with the two children
+    of a binary node, the interior child with the largest surface area is replaced by its
+    own two children until the node is full. The boxes of all children of a node are
+    stored next to each other, so the kernel tests them in one go. Leaves stay the leaves
+    of the binary tree and are tested through it, e.g. by the triangle kernel of a TriangleBVH.
+
+    The object range of every leaf is copied, after the collapse the binary tree releases
+    its nodes and is only kept for its objects and leaf tests.
+ */
+public class WideBVH implements Hittable {
+
+    //children slots that are not used, their boxes lie at infinity so they are rarely hit and skipped when they are
+    private static final int EMPTY = Integer.MIN_VALUE;
+
+    //fewer rays than this are traced one by one, a packet of them does not pay off
+    private static final int MIN_PACKET_RAYS = 4;
+
+    private final BVH binary;
+    private final NodeKernel kernel;
+    private final int width;
+    private final AABB bounds;
+
+    //6 * width floats per node: the minX, minY, minZ, maxX, maxY and maxZ of all children
+    private float[] childBoxes;
+    //width entries per node: index of an interior child, ~index of the leaf of a leaf child, or EMPTY
+    private int[] children;
+    private int nodeCount;
+    private int maxDepth;
+
+    //first object in tree order and object count of every leaf
+    private int[] leafFirst;
+    private int[] leafSizes;
+    private int leafCount;
+
+    //traversal stack of the any-hit query and the entry distances of the children, one per render thread
+    private final ThreadLocal<int[]> occlusionStack;
+    private final ThreadLocal<float[]> occlusionDistances;
+    //the same for closest-hit queries, apart for packets as their rays may continue one by one in the same tree
+    private final ThreadLocal<HitStack> rayStack;
+    private final ThreadLocal<HitStack> packetStack;
+
+    public WideBVH(BVH binary, NodeKernel kernel) {
+        this.binary = binary;
+        this.kernel = kernel;
+        this.width = kernel.width();
+        this.bounds = binary.getBounds();
+        this.occlusionStack = ThreadLocal.withInitial(() -> new int[maxDepth * (width - 1) + 2]);
+        this.occlusionDistances = ThreadLocal.withInitial(() -> new float[width]);
+        this.rayStack = ThreadLocal.withInitial(() -> new HitStack(maxDepth * (width - 1) + 2, width, false));
+        this.packetStack = ThreadLocal.withInitial(() -> new HitStack(maxDepth * (width - 1) + 2, width, true));
+
+        int binaryNodes = binary.getNodeCount();
+        if (binaryNodes == 0) {
+            binary.releaseNodes();
+            return;
+        }
+
+        //every node consumes at least one interior node of the binary tree, every leaf one binary leaf
+        childBoxes = new float[binaryNodes * 6 * width];
+        children = new int[binaryNodes * width];
+        leafFirst = new int[binaryNodes];
+        leafSizes = new int[binaryNodes];
+
+        if (binary.getLeafSize(0) > 0) {
+            //the whole binary tree is a single leaf
+            nodeCount = 1;
+            maxDepth = 1;
+            setChild(0, 0, 0, addLeaf(0));
+            for (int slot = 1; slot < width; slot++)
+                setEmpty(0, slot);
+        } else {
+            buildNode(0, 1);
+        }
+
+        childBoxes = Arrays.copyOf(childBoxes, nodeCount * 6 * width);
+        children = Arrays.copyOf(children, nodeCount * width);
+        leafFirst = Arrays.copyOf(leafFirst, leafCount);
+        leafSizes = Arrays.copyOf(leafSizes, leafCount);
+        binary.releaseNodes();
+    }
+
+    /**
+     World-space bounds of all bounded objects in the hierarchy
+     **/
+    public AABB getBounds() {
+        return bounds;
+    }
+
+    /**
+     Number of nodes of the collapsed tree
+     **/
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    @Override
+    public Intersection hit(Ray ray) {
+        HitRecord record = new HitRecord();
+        return intersect(ray, record) ? record.toIntersection(ray) : null;
+    }
+
+    @Override
+    public boolean intersect(Ray ray, HitRecord record) {
+        boolean found = binary.intersectUnbounded(ray, record);
+
+        if (nodeCount == 0)
+            return found;
+
+        return intersectSubtree(0, ray, record) | found;
+    }
+
+    /*
+        Ranged packet traversal: every stack entry carries the range from the first to the last
+        ray of the packet that hit its box. The frustum of the packet culls a child for all rays
+        with one test. A child it cannot cull is entered as soon as any ray of the range hits it,
+        found by testing the rays from both ends of the range, and for coherent rays the first
+        ray mostly does. So most nodes cost a few box tests for the whole packet instead of one
+        per ray. Once the range of a child shrinks below MIN_PACKET_RAYS the rays have diverged
+        and continue one by one.
+     */
+    @Override
+    public void intersectPacket(RayPacket packet, int first, int last) {
+        if (nodeCount == 0 || last - first + 1 < MIN_PACKET_RAYS || !packet.isCoherent()) {
+            Hittable.super.intersectPacket(packet, first, last);
+            return;
+        }
+
+        for (int i = first; i <= last; i++)
+            binary.intersectUnbounded(packet.getRay(i), packet.getRecord(i));
+
+        HitStack scratch = packetStack.get();
+        int[] stack = scratch.entries;
+        int[] stackFirst = scratch.first;
+        int[] stackLast = scratch.last;
+        int[] stackBoxes = scratch.boxes;
+        float[] stackDistances = scratch.distances;
+        int stackSize = 0;
+
+        float[] distances = scratch.childDistances;
+        int[] childFirst = scratch.childFirst;
+        int[] childLast = scratch.childLast;
+        float[] childDistances = scratch.childFirstDistances;
+
+        int node = 0;
+        int nodeFirst = first, nodeLast = last;
+
+        while (true) {
+            int offset = node * 6 * width;
+
+            //children the frustum cannot rule out
+            int candidates = 0;
+            for (int child = 0; child < width; child++) {
+                int box = offset + child;
+                if (children[node * width + child] != EMPTY && !packet.frustumMisses(childBoxes[box], childBoxes[box + width],
+                        childBoxes[box + 2 * width], childBoxes[box + 3 * width], childBoxes[box + 4 * width], childBoxes[box + 5 * width]))
+                    candidates |= 1 << child;
+            }
+
+            //the first ray of the range that hits each candidate, every test covers all children at once
+            int missing = candidates;
+            for (int i = nodeFirst; i <= nodeLast && missing != 0; i++) {
+                int hits = intersectChildren(offset, packet, i, distances) & missing;
+                missing &= ~hits;
+                while (hits != 0) {
+                    int child = Integer.numberOfTrailingZeros(hits);
+                    hits &= hits - 1;
+                    childFirst[child] = i;
+                    childDistances[child] = distances[child];
+                }
+            }
+
+            //and the last one, searched from the other end, it ends at the latest at the first ray
+            int entered = candidates & ~missing;
+            missing = entered;
+            for (int i = nodeLast; missing != 0; i--) {
+                int hits = intersectChildren(offset, packet, i, distances) & missing;
+                missing &= ~hits;
+                while (hits != 0) {
+                    int child = Integer.numberOfTrailingZeros(hits);
+                    hits &= hits - 1;
+                    childLast[child] = i;
+                }
+            }
+
+            //push the entered children sorted by the distance of their first ray, the nearest one on top
+            int pushed = stackSize;
+            while (entered != 0) {
+                int child = Integer.numberOfTrailingZeros(entered);
+                entered &= entered - 1;
+
+                float distance = childDistances[child];
+                int j = stackSize++;
+                while (j > pushed && stackDistances[j - 1] < distance) {
+                    stack[j] = stack[j - 1];
+                    stackFirst[j] = stackFirst[j - 1];
+                    stackLast[j] = stackLast[j - 1];
+                    stackBoxes[j] = stackBoxes[j - 1];
+                    stackDistances[j] = stackDistances[j - 1];
+                    j--;
+                }
+                stack[j] = children[node * width + child];
+                stackFirst[j] = childFirst[child];
+                stackLast[j] = childLast[child];
+                stackBoxes[j] = offset + child;
+                stackDistances[j] = distance;
+            }
+
+            //test leaves right away until the next interior node with enough rays is popped
+            node = -1;
+            while (node < 0) {
+                if (stackSize == 0)
+                    return;
+                int entry = stack[--stackSize];
+                int rangeFirst = stackFirst[stackSize];
+                int rangeLast = stackLast[stackSize];
+                int box = stackBoxes[stackSize];
+
+                if (rangeLast - rangeFirst + 1 < MIN_PACKET_RAYS) {
+                    for (int i = rangeFirst; i <= rangeLast; i++)
+                        intersectSingle(entry, box, packet, i);
+                    continue;
+                }
+
+                if (entry >= 0) {
+                    node = entry;
+                    nodeFirst = rangeFirst;
+                    nodeLast = rangeLast;
+                    continue;
+                }
+
+                //hits found since the leaf was pushed may have shortened the rays at both ends
+                while (rangeFirst <= rangeLast && !hitsBox(box, packet, rangeFirst))
+                    rangeFirst++;
+                while (rangeLast > rangeFirst && !hitsBox(box, packet, rangeLast))
+                    rangeLast--;
+
+                if (rangeFirst <= rangeLast) {
+                    int leaf = ~entry;
+                    binary.intersectLeafPacket(leafFirst[leaf], leafSizes[leaf], packet, rangeFirst, rangeLast);
+                }
+            }
+        }
+    }
+
+    /**
+     Closest-hit traversal of a single ray below a node, the root of the subtree has been entered already
+     **/
+    private boolean intersectSubtree(int root, Ray ray, HitRecord record) {
+        boolean found = false;
+
+        float originX = ray.origin().x, originY = ray.origin().y, originZ = ray.origin().z;
+        float invDirX = 1f / ray.direction().x, invDirY = 1f / ray.direction().y, invDirZ = 1f / ray.direction().z;
+        float tMin = ray.tMin();
+
+        HitStack scratch = rayStack.get();
+        int[] stack = scratch.entries;
+        float[] stackDistances = scratch.distances;
+        float[] distances = scratch.childDistances;
+        int stackSize = 0;
+        int node = root;
+
+        while (true) {
+            int hits = kernel.intersectChildren(childBoxes, node * 6 * width, originX, originY, originZ, invDirX, invDirY, invDirZ, tMin, ray.tMax(), distances);
+
+            //push the children that were hit sorted by distance, so the nearest one is on top
+            int pushed = stackSize;
+            while (hits != 0) {
+                int child = Integer.numberOfTrailingZeros(hits);
+                hits &= hits - 1;
+
+                int entry = children[node * width + child];
+                if (entry == EMPTY)
+                    continue;
+
+                float distance = distances[child];
+                int j = stackSize++;
+                while (j > pushed && stackDistances[j - 1] < distance) {
+                    stack[j] = stack[j - 1];
+                    stackDistances[j] = stackDistances[j - 1];
+                    j--;
+                }
+                stack[j] = entry;
+                stackDistances[j] = distance;
+            }
+
+            //test leaves right away until the next interior node is popped
+            node = -1;
+            while (node < 0) {
+                if (stackSize == 0)
+                    return found;
+                int entry = stack[--stackSize];
+
+                //skip entries that lie behind a hit found since they were pushed
+                if (stackDistances[stackSize] > ray.tMax())
+                    continue;
+
+                if (entry >= 0) {
+                    node = entry;
+                } else {
+                    int leaf = ~entry;
+                    found |= binary.intersectLeaf(leafFirst[leaf], leafSizes[leaf], ray, record);
+                }
+            }
+        }
+    }
+
+    @Override
+    public boolean occluded(Ray ray) {
+        if (binary.occludedUnbounded(ray))
+            return true;
+
+        if (nodeCount == 0)
+            return false;
+
+        float originX = ray.origin().x, originY = ray.origin().y, originZ = ray.origin().z;
+        float invDirX = 1f / ray.direction().x, invDirY = 1f / ray.direction().y, invDirZ = 1f / ray.direction().z;
+        float tMin = ray.tMin(), tMax = ray.tMax();
+
+        int[] stack = occlusionStack.get();
+        float[] distances = occlusionDistances.get();
+        int stackSize = 0;
+        int node = 0;
+
+        while (true) {
+            int hits = kernel.intersectChildren(childBoxes, node * 6 * width, originX, originY, originZ, invDirX, invDirY, invDirZ, tMin, tMax, distances);
+
+            //any order will do, leaves are tested right away
+            while (hits != 0) {
+                int child = Integer.numberOfTrailingZeros(hits);
+                hits &= hits - 1;
+
+                int entry = children[node * width + child];
+                if (entry == EMPTY)
+                    continue;
+
+                if (entry >= 0) {
+                    stack[stackSize++] = entry;
+                } else {
+                    int leaf = ~entry;
+                    if (binary.occludedLeaf(leafFirst[leaf], leafSizes[leaf], ray))
+                        return true;
+                }
+            }
+
+            if (stackSize == 0)
+                return false;
+            node = stack[--stackSize];
+        }
+    }
+
+    /**
+     Continue a ray of a packet on its own below a child whose box starts at the given offset
+     **/
+    private void intersectSingle(int entry, int box, RayPacket packet, int index) {
+        if (!hitsBox(box, packet, index))
+            return;
+
+        Ray ray = packet.getRay(index);
+        HitRecord record = packet.getRecord(index);
+        if (entry >= 0) {
+            intersectSubtree(entry, ray, record);
+        } else {
+            int leaf = ~entry;
+            binary.intersectLeaf(leafFirst[leaf], leafSizes[leaf], ray, record);
+        }
+    }
+
+    /**
+     Box test of all children of a node for one ray of a packet
+     **/
+    private int intersectChildren(int offset, RayPacket packet, int index, float[] distances) {
+        Ray ray = packet.getRay(index);
+        return kernel.intersectChildren(childBoxes, offset, packet.originX[index], packet.originY[index], packet.originZ[index],
+                packet.invDirX[index], packet.invDirY[index], packet.invDirZ[index], ray.tMin(), ray.tMax(), distances);
+    }
+
+    /**
+     Slab test of a single child box for one ray of a packet
+     **/
+    private boolean hitsBox(int box, RayPacket packet, int index) {
+        Ray ray = packet.getRay(index);
+        float tx1 = (childBoxes[box] - packet.originX[index]) * packet.invDirX[index];
+        float tx2 = (childBoxes[box + 3 * width] - packet.originX[index]) * packet.invDirX[index];
+        float ty1 = (childBoxes[box + width] - packet.originY[index]) * packet.invDirY[index];
+        float ty2 = (childBoxes[box + 4 * width] - packet.originY[index]) * packet.invDirY[index];
+        float tz1 = (childBoxes[box + 2 * width] - packet.originZ[index]) * packet.invDirZ[index];
+        float tz2 = (childBoxes[box + 5 * width] - packet.originZ[index]) * packet.invDirZ[index];
+
+        float tNear = Math.max(Math.max(Math.min(tx1, tx2), Math.min(ty1, ty2)), Math.min(tz1, tz2));
+        float tFar = Math.min(Math.min(Math.max(tx1, tx2), Math.max(ty1, ty2)), Math.max(tz1, tz2));
+
+        //same rejection as the node kernels, NaN never culls
+        return !(tNear > tFar || tFar < ray.tMin() || tNear > ray.tMax());
+    }
+
+    /**
+     Collapse the binary subtree below an interior binary node into a node and return its index
+     **/
+    private int buildNode(int binaryNode, int depth) {
+        int node = nodeCount++;
+        maxDepth = Math.max(maxDepth, depth);
+
+        int[] opened = new int[width];
+        int count = 0;
+        opened[count++] = binaryNode + 1;
+        opened[count++] = binary.getRightChild(binaryNode);
+
+        //open the largest interior child until the node is full or only leaves are left
+        while (count < width) {
+            int largest = -1;
+            float largestArea = -1f;
+            for (int i = 0; i < count; i++) {
+                if (binary.getLeafSize(opened[i]) > 0)
+                    continue;
+                float area = area(opened[i]);
+                if (area > largestArea) {
+                    largestArea = area;
+                    largest = i;
+                }
+            }
+            if (largest == -1)
+                break;
+
+            int parent = opened[largest];
+            opened[largest] = parent + 1;
+            opened[count++] = binary.getRightChild(parent);
+        }
+
+        for (int slot = 0; slot < width; slot++) {
+            if (slot >= count) {
+                setEmpty(node, slot);
+                continue;
+            }
+            int child = opened[slot];
+            setChild(node, slot, child, binary.getLeafSize(child) > 0 ? addLeaf(child) : buildNode(child, depth + 1));
+        }
+        return node;
+    }
+
+    /**
+     Copy the object range of a binary leaf and return the child entry of it
+     **/
+    private int addLeaf(int binaryNode) {
+        int leaf = leafCount++;
+        leafFirst[leaf] = binary.getLeafFirst(binaryNode);
+        leafSizes[leaf] = binary.getLeafSize(binaryNode);
+        return ~leaf;
+    }
+
+    private void setChild(int node, int slot, int binaryNode, int entry) {
+        for (int component = 0; component < 6; component++)
+            childBoxes[node * 6 * width + component * width + slot] = binary.getNodeBound(binaryNode, component);
+        children[node * width + slot] = entry;
+    }
+
+    private void setEmpty(int node, int slot) {
+        //a box at positive infinity lies outside of every ray interval, whatever the direction
+        for (int component = 0; component < 6; component++)
+            childBoxes[node * 6 * width + component * width + slot] = Float.POSITIVE_INFINITY;
+        children[node * width + slot] = EMPTY;
+    }
+
+    private float area(int binaryNode) {
+        float dx = binary.getNodeBound(binaryNode, 3) - binary.getNodeBound(binaryNode, 0);
+        float dy = binary.getNodeBound(binaryNode, 4) - binary.getNodeBound(binaryNode, 1);
+        float dz = binary.getNodeBound(binaryNode, 5) - binary.getNodeBound(binaryNode, 2);
+        return 2f * (dx * dy + dy * dz + dz * dx);
+    }
+
+    /*
+        Stack of a closest-hit traversal with the entry distance of every entry and the distances of the children
+        of a node. Every visited node replaces its stack entry by at most width children. Packets also keep the ray
+        range and box of every entry and the first and last ray that hits every child, with the first ray's distance
+     */
+    private static final class HitStack {
+        final int[] entries;
+        final float[] distances;
+        final float[] childDistances;
+
+        //null for single rays. The box is the offset of the entry in childBoxes, the rays of a leaf are tested against it again
+        final int[] first, last, boxes;
+        final int[] childFirst, childLast;
+        final float[] childFirstDistances;
+
+        HitStack(int capacity, int width, boolean packet) {
+            entries = new int[capacity];
+            distances = new float[capacity];
+            childDistances = new float[width];
+            first = packet ? new int[capacity] : null;
+            last = packet ? new int[capacity] : null;
+            boxes = packet ? new int[capacity] : null;
+            childFirst = packet ? new int[width] : null;
+            childLast = packet ? new int[width] : null;
+            childFirstDistances = packet ? new float[width] : null;
+        }
+    }
+}
@@ -1,10 +1,35 @@
 package scene.models;
 
+import raytracer.ray.HitRecord;
 import raytracer.ray.Intersection;
 import raytracer.ray.Ray;
+import raytracer.ray.RayPacket;
 import scene.Scene;
 
 public interface Hittable {
 
+    /**
+     Closest hit inside the interval of the ray or null, the ray is shortened to the hit
+     **/
     Intersection hit(Ray r);
+
+    /**
+     First phase of a closest-hit query: on a hit inside the interval of the ray the ray is shortened
+     to it and the record is replaced, no shading data is computed
+     **/
+    boolean intersect(Ray r, HitRecord record);
+
+    /**
+     Any-hit query: true as soon as anything is hit inside the interval of the ray, builds no intersection
+     **/
+    boolean occluded(Ray r);
+
+    /**
+     Closest-hit query of the rays first to last of a packet, every ray with its own record as in intersect.
+     Structures that can share work between the rays override it, everything else traces them one by one
+     **/
+    default void intersectPacket(RayPacket packet, int first, int last) {
+        for (int i = first; i <= last; i++)
+            intersect(packet.getRay(i), packet.getRecord(i));
+    }
 }
\ No newline at end of file
@@ -0,0 +1,105 @@
+package scene.models;
+
+/*
+    Triangle mesh as flat buffers, without an object per vertex or triangle.
+
+    Vertex attributes are stored in separate arrays, as in an OBJ file: 3 floats per
+    position and normal, 2 per texture coordinate. Every triangle corner has an index
+    into each of them, 3 per triangle, counting from 0. Normal and texture coordinate
+    indices are -1 where the face has none.
+
+    Materials are referenced by name, as the file names them, with an id per triangle into
+    the list of names and -1 for triangles without one. The libraries are the material files
+    the source refers to, relative to its own location.
+ */
+public final class MeshData {
+
+    private final float[] positions;
+    private final float[] normals;
+    private final float[] texCoords;
+
+    private final int[] positionIndices;
+    private final int[] normalIndices;
+    private final int[] texCoordIndices;
+
+    private final int[] materialIds;
+    private final String[] materialNames;
+    private final String[] materialLibraries;
+
+    public MeshData(float[] positions, float[] normals, float[] texCoords, int[] positionIndices, int[] normalIndices, int[] texCoordIndices,
+                    int[] materialIds, String[] materialNames, String[] materialLibraries) {
+        this.positions = positions;
+        this.normals = normals;
+        this.texCoords = texCoords;
+        this.positionIndices = positionIndices;
+        this.normalIndices = normalIndices;
+        this.texCoordIndices = texCoordIndices;
+        this.materialIds = materialIds;
+        this.materialNames = materialNames;
+        this.materialLibraries = materialLibraries;
+    }
+
+    public int getTriangleCount() {
+        return positionIndices.length / 3;
+    }
+
+    public int getPositionCount() {
+        return positions.length / 3;
+    }
+
+    public int getNormalCount() {
+        return normals.length / 3;
+    }
+
+    public int getTexCoordCount() {
+        return texCoords.length / 2;
+    }
+
+    /**
+     x, y and z of every position
+     **/
+    public float[] getPositions() {
+        return positions;
+    }
+
+    /**
+     x, y and z of every normal, as given by the source and not necessarily normalized
+     **/
+    public float[] getNormals() {
+        return normals;
+    }
+
+    /**
+     u and v of every texture coordinate
+     **/
+    public float[] getTexCoords() {
+        return texCoords;
+    }
+
+    public int[] getPositionIndices() {
+        return positionIndices;
+    }
+
+    public int[] getNormalIndices() {
+        return normalIndices;
+    }
+
+    public int[] getTexCoordIndices() {
+        return texCoordIndices;
+    }
+
+    /**
+     Index into the material names for every triangle, -1 for triangles without a material
+     **/
+    public int[] getMaterialIds() {
+        return materialIds;
+    }
+
+    public String[] getMaterialNames() {
+        return materialNames;
+    }
+
+    public String[] getMaterialLibraries() {
+        return materialLibraries;
+    }
+}
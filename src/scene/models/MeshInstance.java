@@ -0,0 +1,72 @@
+package scene.models;
+
+import raytracer.ray.HitRecord;
+import raytracer.ray.Intersection;
+import raytracer.ray.Ray;
+import scene.acceleration.AABB;
+import utils.algebra.Vec3;
+
+/*
+    Places a shared TriangleModel in the scene with its own transform.
+
+    The model is kept in object space and its BVH is built only once, no matter how
+    often it is instanced. Rays are transformed into object space before they enter
+    the bottom level BVH, only the intersection of the final hit is transformed back to world space.
+ */
+public class MeshInstance extends SceneObject {
+
+    private final TriangleModel mesh;
+    private final Transform transform;
+
+    public MeshInstance(TriangleModel mesh, Transform transform) {
+        this.mesh = mesh;
+        this.transform = transform;
+    }
+
+    public TriangleModel getMesh() {
+        return mesh;
+    }
+
+    @Override
+    public boolean intersect(Ray ray, HitRecord record) {
+        Ray localRay = toLocal(ray);
+        if (!mesh.intersect(localRay, record))
+            return false;
+
+        //the triangle is in object space, the intersection has to be built through this instance
+        ray.setTMax(localRay.tMax());
+        record.instance = this;
+        return true;
+    }
+
+    @Override
+    public Intersection buildIntersection(Ray ray, HitRecord record) {
+        Intersection localHit = record.object.buildIntersection(toLocal(ray), record);
+
+        //the local hit vectors are owned by this hit, transform them in place
+        Vec3 hitPoint = transform.transformPoint(localHit.position(), localHit.position());
+        Vec3 worldNormal = transform.transformNormal(localHit.normal(), localHit.normal());
+
+        //reported as the instance, the model is shared and its emitter, if it is in the scene as well, is in object space
+        return new Intersection(localHit.distance(), hitPoint, worldNormal, localHit.material(), this);
+    }
+
+    @Override
+    public boolean occluded(Ray ray) {
+        return mesh.occluded(toLocal(ray));
+    }
+
+    /**
+     Object space copy of the ray, the direction is not normalized so it keeps the interval of the world space ray
+     **/
+    private Ray toLocal(Ray ray) {
+        Vec3 localOrigin = transform.inverseTransformPoint(ray.origin());
+        Vec3 localDirection = transform.inverseTransformDirection(ray.direction());
+        return new Ray(localOrigin, localDirection, ray.tMin(), ray.tMax());
+    }
+
+    @Override
+    public AABB getBounds() {
+        return mesh.getBounds().transform(transform.getMatrix());
+    }
+}
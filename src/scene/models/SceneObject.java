@@ -1,11 +1,44 @@
 package scene.models;
 
+import raytracer.ray.HitRecord;
 import raytracer.ray.Intersection;
 import raytracer.ray.Ray;
+import scene.acceleration.AABB;
 
 public class SceneObject implements Hittable {
+    /**
+     Closest hit in two phases, the intersection is only built for the hit that wins
+     **/
     @Override
     public Intersection hit(Ray r) {
+        HitRecord record = new HitRecord();
+        return intersect(r, record) ? record.toIntersection(r) : null;
+    }
+
+    @Override
+    public boolean intersect(Ray r, HitRecord record) {
+        return false;
+    }
+
+    /**
+     Second phase of a closest-hit query: position, normal and material of the recorded hit
+     **/
+    public Intersection buildIntersection(Ray r, HitRecord record) {
         return null;
     }
-}
\ No newline at end of file
+
+    /**
+     Fallback for objects without a dedicated any-hit test
+     **/
+    @Override
+    public boolean occluded(Ray r) {
+        return intersect(r, new HitRecord());
+    }
+
+    /**
+     World-space bounds of the object, objects that cannot tell their extent span the whole space
+     **/
+    public AABB getBounds() {
+        return AABB.infinite();
+    }
+}
@@ -6,6 +6,10 @@ import utils.algebra.Vec3;
 public class Transform {
     Matrix4x4 matrix;
 
+    //derived once from the matrix, the transform is immutable after construction
+    private final Matrix4x4 inverse;
+    private final Matrix4x4 normalMatrix;
+
     public Transform(Vec3 translation) {
         this(translation, new Vec3(0 , 0, 0), new Vec3(1, 1, 1));
     }
@@ -52,9 +56,89 @@ public class Transform {
 
         Matrix4x4 rotationMatrix = rotationZMatrix.mult(rotationYMatrix).mult(rotationXMatrix);
         this.matrix = translationMatrix.mult(rotationMatrix).mult(scaleMatrix);
+
+        this.inverse = this.matrix.invert();
+        this.normalMatrix = this.inverse.transpose();
     }
 
     public Matrix4x4 getMatrix() {
         return this.matrix;
     }
+
+    public Matrix4x4 getInverse() {
+        return this.inverse;
+    }
+
+    /**
+     Inverse transpose of the matrix, transforms normals to world space
+     **/
+    public Matrix4x4 getNormalMatrix() {
+        return this.normalMatrix;
+    }
+
+    /**
+     Get the upper three rows of the inverse, lets primitives transform rays into local space without allocating
+     **/
+    public float[] getInverseRows() {
+        float[] rows = new float[12];
+        for (int row = 0; row < 3; row++)
+            for (int col = 0; col < 4; col++)
+                rows[row * 4 + col] = (float) inverse.getValueAt(row, col);
+        return rows;
+    }
+
+    /**
+     Transform a point from local to world space
+     **/
+    public Vec3 transformPoint(Vec3 point) {
+        return transformPoint(point, new Vec3());
+    }
+
+    public Vec3 transformPoint(Vec3 point, Vec3 out) {
+        return matrix.transformPoint(point, out);
+    }
+
+    /**
+     Transform a direction from local to world space
+     **/
+    public Vec3 transformDirection(Vec3 direction) {
+        return transformDirection(direction, new Vec3());
+    }
+
+    public Vec3 transformDirection(Vec3 direction, Vec3 out) {
+        return matrix.transformVector(direction, out);
+    }
+
+    /**
+     Transform a local normal to a normalized world space normal
+     **/
+    public Vec3 transformNormal(Vec3 normal) {
+        return transformNormal(normal, new Vec3());
+    }
+
+    public Vec3 transformNormal(Vec3 normal, Vec3 out) {
+        return normalMatrix.transformVector(normal, out).normalizeInPlace();
+    }
+
+    /**
+     Transform a point from world to local space
+     **/
+    public Vec3 inverseTransformPoint(Vec3 point) {
+        return inverseTransformPoint(point, new Vec3());
+    }
+
+    public Vec3 inverseTransformPoint(Vec3 point, Vec3 out) {
+        return inverse.transformPoint(point, out);
+    }
+
+    /**
+     Transform a direction from world to local space
+     **/
+    public Vec3 inverseTransformDirection(Vec3 direction) {
+        return inverseTransformDirection(direction, new Vec3());
+    }
+
+    public Vec3 inverseTransformDirection(Vec3 direction, Vec3 out) {
+        return inverse.transformVector(direction, out);
+    }
 }
@@ -0,0 +1,215 @@
+package scene.models;
+
+import materials.Material;
+import raytracer.ray.HitRecord;
+import raytracer.ray.Intersection;
+import raytracer.ray.Ray;
+import scene.models.primitives.Triangle;
+import utils.algebra.Matrix4x4;
+import utils.algebra.Vec3;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+    Triangles as indexed buffers instead of an object per triangle.
+
+    Positions and normals are stored once as floats and shared by all triangles using them,
+    every triangle has 3 position and 3 normal indices and the index of its material in a
+    table of the few materials of the mesh. Positions and normals keep separate indices like
+    in the OBJ file, so a flat shaded mesh shares its positions without repeating them for
+    the normal of every face.
+
+    A Triangle object with its references to shared Vec3s and its material, plus the list
+    and tree entries pointing to it, costs several times as much per triangle. Triangle
+    objects are only created on demand, for code that needs them.
+ */
+public final class TriangleMesh {
+
+    private final float[] positions;
+    private final float[] normals;
+    private final int[] positionIndices;
+    private final int[] normalIndices;
+
+    //per triangle, index into materials
+    private final int[] materialIds;
+    private final Material[] materials;
+
+    /**
+     Mesh of the given buffers: 3 floats per position and normal, 3 position and normal indices and a material id per triangle
+     **/
+    public TriangleMesh(float[] positions, float[] normals, int[] positionIndices, int[] normalIndices,
+                        int[] materialIds, Material[] materials) {
+        this.positions = positions;
+        this.normals = normals;
+        this.positionIndices = positionIndices;
+        this.normalIndices = normalIndices;
+        this.materialIds = materialIds;
+        this.materials = materials;
+    }
+
+    /**
+     Mesh of imported buffers, transformed by the given transform. Materials has the material of every
+     material name of the data, triangles without a material get the fallback. The index buffers are shared with the data
+     **/
+    public static TriangleMesh of(MeshData data, Transform transform, Material[] materials, Material fallback) {
+        float[] positions = data.getPositions().clone();
+        Vec3 point = new Vec3();
+        for (int i = 0; i < positions.length; i += 3) {
+            transform.transformPoint(point.set(positions[i], positions[i + 1], positions[i + 2]), point);
+            positions[i] = point.x;
+            positions[i + 1] = point.y;
+            positions[i + 2] = point.z;
+        }
+
+        float[] normals = data.getNormals().clone();
+        Matrix4x4 normalMatrix = transform.getNormalMatrix();
+        for (int i = 0; i < normals.length; i += 3) {
+            normalMatrix.transformVector(point.set(normals[i], normals[i + 1], normals[i + 2]), point);
+            normals[i] = point.x;
+            normals[i + 1] = point.y;
+            normals[i + 2] = point.z;
+        }
+
+        //the fallback goes behind the named materials
+        Material[] table = Arrays.copyOf(materials, materials.length + 1);
+        table[materials.length] = fallback;
+        int[] materialIds = data.getMaterialIds().clone();
+        for (int t = 0; t < materialIds.length; t++) {
+            if (materialIds[t] < 0)
+                materialIds[t] = materials.length;
+        }
+
+        //the parser generated normals for all faces without, every corner has one
+        return new TriangleMesh(positions, normals, data.getPositionIndices(), data.getNormalIndices(), materialIds, table);
+    }
+
+    /**
+     Mesh of Triangle objects, vertices and normals shared by several triangles are shared in the mesh as well
+     **/
+    public static TriangleMesh of(List<Triangle> triangles) {
+        Map<Vec3, Integer> positionIds = new IdentityHashMap<>();
+        Map<Vec3, Integer> normalIds = new IdentityHashMap<>();
+        Map<Material, Integer> materialTable = new IdentityHashMap<>();
+
+        int[] positionIndices = new int[triangles.size() * 3];
+        int[] normalIndices = new int[triangles.size() * 3];
+        int[] materialIds = new int[triangles.size()];
+
+        for (int t = 0; t < triangles.size(); t++) {
+            Triangle triangle = triangles.get(t);
+            positionIndices[t * 3] = positionIds.computeIfAbsent(triangle.getVertex0(), vertex -> positionIds.size());
+            positionIndices[t * 3 + 1] = positionIds.computeIfAbsent(triangle.getVertex1(), vertex -> positionIds.size());
+            positionIndices[t * 3 + 2] = positionIds.computeIfAbsent(triangle.getVertex2(), vertex -> positionIds.size());
+            normalIndices[t * 3] = normalIds.computeIfAbsent(triangle.getNormal0(), normal -> normalIds.size());
+            normalIndices[t * 3 + 1] = normalIds.computeIfAbsent(triangle.getNormal1(), normal -> normalIds.size());
+            normalIndices[t * 3 + 2] = normalIds.computeIfAbsent(triangle.getNormal2(), normal -> normalIds.size());
+            materialIds[t] = materialTable.computeIfAbsent(triangle.getMaterial(), material -> materialTable.size());
+        }
+
+        float[] positions = new float[positionIds.size() * 3];
+        positionIds.forEach((vertex, id) -> setVector(positions, id, vertex));
+        float[] normals = new float[normalIds.size() * 3];
+        normalIds.forEach((normal, id) -> setVector(normals, id, normal));
+        Material[] table = new Material[materialTable.size()];
+        materialTable.forEach((material, id) -> table[id] = material);
+
+        return new TriangleMesh(positions, normals, positionIndices, normalIndices, materialIds, table);
+    }
+
+    private static void setVector(float[] target, int index, Vec3 vector) {
+        target[index * 3] = vector.x;
+        target[index * 3 + 1] = vector.y;
+        target[index * 3 + 2] = vector.z;
+    }
+
+    public int getTriangleCount() {
+        return positionIndices.length / 3;
+    }
+
+    /**
+     x, y and z of every position
+     **/
+    public float[] getPositions() {
+        return positions;
+    }
+
+    /**
+     x, y and z of every normal, not necessarily normalized
+     **/
+    public float[] getNormals() {
+        return normals;
+    }
+
+    /**
+     3 position indices per triangle
+     **/
+    public int[] getPositionIndices() {
+        return positionIndices;
+    }
+
+    /**
+     3 normal indices per triangle
+     **/
+    public int[] getNormalIndices() {
+        return normalIndices;
+    }
+
+    public Material getMaterial(int triangle) {
+        return materials[materialIds[triangle]];
+    }
+
+    /**
+     Bounds of every triangle, 6 floats each: minX, minY, minZ, maxX, maxY, maxZ
+     **/
+    public float[] computeTriangleBounds() {
+        float[] bounds = new float[getTriangleCount() * 6];
+        for (int t = 0; t < getTriangleCount(); t++) {
+            int i0 = positionIndices[t * 3] * 3, i1 = positionIndices[t * 3 + 1] * 3, i2 = positionIndices[t * 3 + 2] * 3;
+            for (int k = 0; k < 3; k++) {
+                bounds[t * 6 + k] = Math.min(Math.min(positions[i0 + k], positions[i1 + k]), positions[i2 + k]);
+                bounds[t * 6 + 3 + k] = Math.max(Math.max(positions[i0 + k], positions[i1 + k]), positions[i2 + k]);
+            }
+        }
+        return bounds;
+    }
+
+    /**
+     A new Triangle object with the vertices, normals and material of a triangle, nothing is shared with the mesh
+     **/
+    public Triangle getTriangle(int triangle) {
+        Vec3[] corners = new Vec3[6];
+        for (int i = 0; i < 3; i++) {
+            int position = positionIndices[triangle * 3 + i] * 3;
+            int normal = normalIndices[triangle * 3 + i] * 3;
+            corners[i * 2] = new Vec3(positions[position], positions[position + 1], positions[position + 2]);
+            corners[i * 2 + 1] = new Vec3(normals[normal], normals[normal + 1], normals[normal + 2]);
+        }
+        return new Triangle(corners[0], corners[1], corners[2], corners[3], corners[4], corners[5], getMaterial(triangle));
+    }
+
+    /**
+     Intersection of the triangle of the record, with the normal interpolated from its vertices like a Triangle does.
+     Object is the model reported as the hit object
+     **/
+    public Intersection buildIntersection(Ray r, HitRecord record, SceneObject object) {
+        int triangle = record.primitive;
+        float t = record.distance;
+        float u = record.u;
+        float v = record.v;
+        float w = 1 - u - v;
+
+        Vec3 intersectionPoint = new Vec3(r.origin()).addScaledInPlace(r.direction(), t);
+
+        int n0 = normalIndices[triangle * 3] * 3, n1 = normalIndices[triangle * 3 + 1] * 3, n2 = normalIndices[triangle * 3 + 2] * 3;
+        Vec3 interpolatedNormal = new Vec3(
+                normals[n0] * w + normals[n1] * u + normals[n2] * v,
+                normals[n0 + 1] * w + normals[n1 + 1] * u + normals[n2 + 1] * v,
+                normals[n0 + 2] * w + normals[n1 + 2] * u + normals[n2 + 2] * v
+        ).normalizeInPlace();
+
+        return new Intersection(t, intersectionPoint, interpolatedNormal, getMaterial(triangle), object);
+    }
+}
@@ -1,22 +1,122 @@
 package scene.models;
 
+import raytracer.ray.HitRecord;
 import raytracer.ray.Intersection;
 import raytracer.ray.Ray;
-import scene.Scene;
+import raytracer.ray.RayPacket;
+import scene.acceleration.AABB;
+import scene.acceleration.BVH;
+import scene.acceleration.TriangleBVH;
+import scene.acceleration.TriangleKernel;
+import scene.acceleration.WideBVH;
+import scene.acceleration.KernelType;
+import scene.models.primitives.Triangle;
 
+import java.util.ArrayList;
 import java.util.List;
-import static raytracer.ray.RayUtils.findClosestIntersection;
+import java.util.function.Consumer;
 
-public class TriangleModel extends SceneObject {
+public final class TriangleModel extends SceneObject {
 
-    List<SceneObject> triangles;
+    //the triangles as indexed buffers, null for a model with other objects than triangles
+    private final TriangleMesh mesh;
 
-    public TriangleModel(List<SceneObject> triangles) {
-        this.triangles = triangles;
+    //bottom level acceleration structure, built once for the lifetime of the model
+    private final WideBVH bvh;
+
+    /**
+     Model whose triangles and tree nodes are tested with the given kernels, a model with other objects than triangles
+     uses a plain BVH below the wide tree
+     **/
+    public TriangleModel(List<SceneObject> triangles, KernelType kernel) {
+        this(triangles, kernel, null, null);
+    }
+
+    /**
+     Model that skips the build of its tree if the layout of an earlier model over the same triangles fits the kernel.
+     Without a fitting layout the tree is built and handed to treeBuilt as a layout, if it is not null, for a later
+     model of the same triangles. Only the wide nodes are kept, the layout cannot be taken from the model afterwards
+     **/
+    public TriangleModel(List<SceneObject> triangles, KernelType kernel, BVH.Layout layout, Consumer<BVH.Layout> treeBuilt) {
+        List<Triangle> meshTriangles = new ArrayList<>(triangles.size());
+        for (SceneObject object : triangles) {
+            if (object instanceof Triangle triangle)
+                meshTriangles.add(triangle);
+        }
+
+        BVH binary;
+        if (meshTriangles.size() == triangles.size()) {
+            //the Triangle objects are only needed until their data is in the mesh
+            mesh = TriangleMesh.of(meshTriangles);
+            binary = buildTree(mesh, kernel, layout, treeBuilt);
+        } else {
+            mesh = null;
+            if (layout != null && layout.matches(triangles.size(), 1)) {
+                binary = new BVH(triangles, layout);
+            } else {
+                binary = new BVH(triangles);
+                if (treeBuilt != null)
+                    treeBuilt.accept(binary.getLayout());
+            }
+        }
+        this.bvh = new WideBVH(binary, kernel.createNodeKernel());
+    }
+
+    public TriangleModel(TriangleMesh mesh, KernelType kernel) {
+        this(mesh, kernel, null, null);
+    }
+
+    /**
+     Model of an indexed mesh, the tree is taken from the layout or built and handed to treeBuilt like for a list of triangles
+     **/
+    public TriangleModel(TriangleMesh mesh, KernelType kernel, BVH.Layout layout, Consumer<BVH.Layout> treeBuilt) {
+        this.mesh = mesh;
+        this.bvh = new WideBVH(buildTree(mesh, kernel, layout, treeBuilt), kernel.createNodeKernel());
+    }
+
+    private BVH buildTree(TriangleMesh mesh, KernelType kernel, BVH.Layout layout, Consumer<BVH.Layout> treeBuilt) {
+        TriangleKernel triangleKernel = kernel.createTriangleKernel();
+        if (layout != null && layout.matches(mesh.getTriangleCount(), triangleKernel.width()))
+            return new TriangleBVH(mesh, this, triangleKernel, layout);
+
+        TriangleBVH binary = new TriangleBVH(mesh, this, triangleKernel);
+        if (treeBuilt != null)
+            treeBuilt.accept(binary.getLayout());
+        return binary;
+    }
+
+    /**
+     The indexed triangles of the model, null if it holds other objects than triangles
+     **/
+    public TriangleMesh getMesh() {
+        return mesh;
+    }
+
+    @Override
+    public boolean intersect(Ray r, HitRecord record) {
+        return bvh.intersect(r, record);
+    }
+
+    @Override
+    public void intersectPacket(RayPacket packet, int first, int last) {
+        bvh.intersectPacket(packet, first, last);
+    }
+
+    /**
+     The hit of a mesh triangle is recorded with the model and the index of the triangle, other objects build their own
+     **/
+    @Override
+    public Intersection buildIntersection(Ray r, HitRecord record) {
+        return mesh.buildIntersection(r, record, this);
+    }
+
+    @Override
+    public boolean occluded(Ray r) {
+        return bvh.occluded(r);
     }
 
     @Override
-    public Intersection hit(Ray r) {
-        return findClosestIntersection(triangles, r);
+    public AABB getBounds() {
+        return bvh.getBounds();
     }
 }
@@ -1,64 +1,160 @@
 package scene.models.primitives;
 
 import materials.Material;
+import raytracer.ray.HitRecord;
 import raytracer.ray.Intersection;
 import raytracer.ray.Ray;
 import raytracer.ray.RayUtils;
+import scene.acceleration.AABB;
 import scene.models.Transform;
-import utils.algebra.Matrix4x4;
 import utils.algebra.Vec2;
 import utils.algebra.Vec3;
 
 public class Plane extends Shape {
     private final Material material;
-    private final Matrix4x4 transform;
+    private final Transform transform;
     private final Vec3 normal;
     private final Vec2 scale;
 
+    //local frame of the plane, only depends on the transform and the normal
+    private final Vec3 localNormal;
+    private final Vec3 tangent1;
+    private final Vec3 tangent2;
+    private final Vec3 worldNormal;
+
+    //world-space center and half extents of the plane, used to sample points on it
+    private final Vec3 worldCenter;
+    private final Vec3 worldEdge1;
+    private final Vec3 worldEdge2;
+    private final float worldArea;
+
+    //world to local matrix rows, rays are transformed without allocating
+    private final float[] worldToLocal;
+
     public Plane(Transform transform, Vec3 normal, Vec2 scale, Material material) {
-        this.transform = transform.getMatrix();
+        this.transform = transform;
         this.normal = normal.normalize();  //make sure normal is normalized
         this.scale = scale;
         this.material = material;
+
+        this.localNormal = transform.inverseTransformDirection(this.normal).normalize();
+
+        //Tangents for local coordinates
+        this.tangent1 = (Math.abs(localNormal.y) > 0.9f) ? new Vec3(1, 0, 0) : localNormal.cross(new Vec3(0, 1, 0)).normalize();
+        this.tangent2 = localNormal.cross(tangent1).normalize();
+
+        this.worldNormal = transform.transformNormal(localNormal);
+
+        this.worldCenter = transform.transformPoint(new Vec3(0, 0, 0));
+        this.worldEdge1 = transform.transformDirection(tangent1.multScalar(scale.x));
+        this.worldEdge2 = transform.transformDirection(tangent2.multScalar(scale.y));
+        this.worldArea = 4 * worldEdge1.cross(worldEdge2).length();
+
+        this.worldToLocal = transform.getInverseRows();
+    }
+
+    public Material getMaterial() {
+        return material;
+    }
+
+    /**
+     Get world-space normal of the plane
+     **/
+    public Vec3 getNormal() {
+        return new Vec3(worldNormal);
+    }
+
+    /**
+     Get world-space area of the plane
+     **/
+    public float getArea() {
+        return worldArea;
+    }
+
+    /**
+     Get the world-space point of the plane at the given coordinates in [0, 1)², uniformly distributed over its area
+     **/
+    public Vec3 samplePoint(float u, float v, Vec3 out) {
+        return out.set(worldCenter)
+                .addScaledInPlace(worldEdge1, 2 * u - 1)
+                .addScaledInPlace(worldEdge2, 2 * v - 1);
     }
 
     @Override
-    public Intersection hit(Ray ray) {
-        // Transform the ray into the plane's local space
-        Matrix4x4 invTransform = transform.invert();
-        Vec3 transformedOrigin = invTransform.multVec3(ray.origin(), true);
-        Vec3 transformedDirection = invTransform.multVec3(ray.direction(), false);
+    public AABB getBounds() {
+        //the four corners of the plane in world space
+        AABB bounds = new AABB();
+        for (int i = 0; i < 4; i++) {
+            float x = (i & 1) == 0 ? -scale.x : scale.x;
+            float y = (i & 2) == 0 ? -scale.y : scale.y;
+            Vec3 localCorner = tangent1.multScalar(x).add(tangent2.multScalar(y));
+            bounds.grow(transform.transformPoint(localCorner));
+        }
+        return bounds;
+    }
 
-        Vec3 localNormal = invTransform.multVec3(normal, false).normalize();
-        Vec3 planeOrigin = new Vec3(0, 0, 0);
+    @Override
+    public boolean intersect(Ray ray, HitRecord record) {
+        float t = intersect(ray);
+        if (t == Float.POSITIVE_INFINITY)
+            return false;
 
-        float denom = localNormal.scalar(transformedDirection);
-        if (Math.abs(denom) <= RayUtils.RAY_EPSYLON)
-            return null;
+        ray.setTMax(t);
+        record.set(this, t, 0, 0);
+        return true;
+    }
 
-        float t = localNormal.scalar(planeOrigin.sub(transformedOrigin)) / denom;
-        if (t < 0)
-            return null;
+    @Override
+    public Intersection buildIntersection(Ray ray, HitRecord record) {
+        float t = record.distance;
 
-        Vec3 localHitPoint = transformedOrigin.add(transformedDirection.multScalar(t));
+        //t is the same in both spaces, so the world hit point follows directly from the ray
+        Vec3 hitPoint = new Vec3(ray.origin()).addScaledInPlace(ray.direction(), t);
+        Vec3 worldNormal = new Vec3(this.worldNormal);
 
-        //Tangents for local coordinates
-        Vec3 tangent1 = (Math.abs(localNormal.y) > 0.9f) ? new Vec3(1, 0, 0) : localNormal.cross(new Vec3(0, 1, 0)).normalize();
-        Vec3 tangent2 = localNormal.cross(tangent1).normalize();
+        return new Intersection(t, hitPoint, worldNormal, material, this);
+    }
 
-        //Local (u, v) coordinates
-        Vec3 offset = localHitPoint.sub(planeOrigin);
-        float localX = offset.scalar(tangent1);
-        float localY = offset.scalar(tangent2);
+    @Override
+    public boolean occluded(Ray ray) {
+        return intersect(ray) != Float.POSITIVE_INFINITY;
+    }
 
-        //check bounds
-        if (Math.abs(localX) > scale.x || Math.abs(localY) > scale.y)
-            return null;
+    /**
+     Distance to the intersection inside the interval of the ray, infinity on a miss
+     **/
+    private float intersect(Ray ray) {
+        Vec3 origin = ray.origin();
+        Vec3 direction = ray.direction();
+        float[] m = worldToLocal;
+
+        // Transform the ray into the plane's local space
+        float originX = m[0] * origin.x + m[1] * origin.y + m[2] * origin.z + m[3];
+        float originY = m[4] * origin.x + m[5] * origin.y + m[6] * origin.z + m[7];
+        float originZ = m[8] * origin.x + m[9] * origin.y + m[10] * origin.z + m[11];
+        float directionX = m[0] * direction.x + m[1] * direction.y + m[2] * direction.z;
+        float directionY = m[4] * direction.x + m[5] * direction.y + m[6] * direction.z;
+        float directionZ = m[8] * direction.x + m[9] * direction.y + m[10] * direction.z;
+
+        float denom = localNormal.x * directionX + localNormal.y * directionY + localNormal.z * directionZ;
+        if (Math.abs(denom) <= RayUtils.RAY_EPSYLON)
+            return Float.POSITIVE_INFINITY;
+
+        //the plane passes through the local origin
+        float t = -(localNormal.x * originX + localNormal.y * originY + localNormal.z * originZ) / denom;
+        if (!ray.contains(t))
+            return Float.POSITIVE_INFINITY;
 
-        //Transform hit point and normal back to world space
-        Vec3 hitPoint = transform.multVec3(localHitPoint, true);
-        Vec3 worldNormal = invTransform.transpose().multVec3(localNormal, false).normalize();
+        float hitX = originX + directionX * t;
+        float hitY = originY + directionY * t;
+        float hitZ = originZ + directionZ * t;
+
+        //Local (u, v) coordinates, check bounds
+        float localX = hitX * tangent1.x + hitY * tangent1.y + hitZ * tangent1.z;
+        float localY = hitX * tangent2.x + hitY * tangent2.y + hitZ * tangent2.z;
+        if (Math.abs(localX) > scale.x || Math.abs(localY) > scale.y)
+            return Float.POSITIVE_INFINITY;
 
-        return new Intersection(t, hitPoint, worldNormal, material);
+        return t;
     }
 }
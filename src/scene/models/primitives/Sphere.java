@@ -1,81 +1,105 @@
 package scene.models.primitives;
 
 import materials.Material;
+import raytracer.ray.HitRecord;
 import raytracer.ray.Intersection;
 import raytracer.ray.Ray;
 import raytracer.ray.RayUtils;
+import scene.acceleration.AABB;
 import scene.models.Transform;
-import utils.algebra.Matrix4x4;
 import utils.algebra.Vec3;
 
 public class Sphere extends Shape {
-    private final Matrix4x4 transform;
+    private final Transform transform;
     private final float radius;
     private final Material material;
 
+    //world to local matrix rows, rays are transformed without allocating
+    private final float[] worldToLocal;
+
     public Sphere(Transform transform, float radius, Material material) {
-        this.transform = transform.getMatrix();
+        this.transform = transform;
         this.radius = radius;
         this.material = material;
+        this.worldToLocal = transform.getInverseRows();
     }
 
     @Override
-    public Intersection hit(Ray ray) {
-        //transform the ray into the sphere local space
-        Matrix4x4 transformInverted = transform.invert();
-
-        Vec3 transformedOrigin = transformInverted.multVec3(ray.origin(), true);
-        Vec3 transformedDirection = transformInverted.multVec3(ray.direction(), false);
-
-        float a = transformedDirection.scalar(transformedDirection);
-        float b = 2.0f * transformedOrigin.scalar(transformedDirection);
-        float c = transformedOrigin.scalar(transformedOrigin) - radius * radius;
+    public AABB getBounds() {
+        //local bounds of the sphere, transformed to world space
+        return new AABB(new Vec3(-radius, -radius, -radius), new Vec3(radius, radius, radius)).transform(transform.getMatrix());
+    }
 
-        float discriminant = b * b - 4.0f * a * c;
+    @Override
+    public boolean intersect(Ray ray, HitRecord record) {
+        float t = intersect(ray);
+        if (t == Float.POSITIVE_INFINITY)
+            return false;
+
+        ray.setTMax(t);
+        record.set(this, t, 0, 0);
+        return true;
+    }
 
-        //no real solution, no intersection
-        if (discriminant < 0)
-            return null;
+    @Override
+    public Intersection buildIntersection(Ray ray, HitRecord record) {
+        float t = record.distance;
 
-        //one real solution, ray tangents the sphere
-        else if (Math.abs(discriminant) < RayUtils.RAY_EPSYLON) {
-            float t = -b / (2.0f * a);
-            if (t < 0)
-                return null; //Intersection is behind the ray origin
+        //t is the same in both spaces, so the world hit point follows directly from the ray
+        Vec3 hitPoint = new Vec3(ray.origin()).addScaledInPlace(ray.direction(), t);
 
-            else {
+        //the local hit point is also the unnormalized local normal
+        Vec3 normal = transform.inverseTransformPoint(hitPoint, new Vec3());
+        transform.transformNormal(normal, normal);
 
-                Vec3 hitPoint = transformedOrigin.add(transformedDirection.multScalar(t));
-                Vec3 normal = hitPoint.normalize();
+        return new Intersection(t, hitPoint, normal, material, this);
+    }
 
-                // Transform hit point and normal back to world space
-                hitPoint = transform.multVec3(hitPoint, true);
-                normal = transform.transpose().multVec3(normal, false).normalize();
+    @Override
+    public boolean occluded(Ray ray) {
+        return intersect(ray) != Float.POSITIVE_INFINITY;
+    }
 
-                return new Intersection(t, hitPoint, normal, material);
-            }
+    /**
+     Distance to the closest intersection inside the interval of the ray, infinity on a miss
+     **/
+    private float intersect(Ray ray) {
+        Vec3 origin = ray.origin();
+        Vec3 direction = ray.direction();
+        float[] m = worldToLocal;
 
-        //two real solutions, ray intersects the sphere
-        } else {
-            float sqrtDiscriminant = (float) Math.sqrt(discriminant);
-            float t1 = (-b - sqrtDiscriminant) / (2.0f * a);
-            float t2 = (-b + sqrtDiscriminant) / (2.0f * a);
+        //transform the ray into the sphere local space
+        float originX = m[0] * origin.x + m[1] * origin.y + m[2] * origin.z + m[3];
+        float originY = m[4] * origin.x + m[5] * origin.y + m[6] * origin.z + m[7];
+        float originZ = m[8] * origin.x + m[9] * origin.y + m[10] * origin.z + m[11];
+        float directionX = m[0] * direction.x + m[1] * direction.y + m[2] * direction.z;
+        float directionY = m[4] * direction.x + m[5] * direction.y + m[6] * direction.z;
+        float directionZ = m[8] * direction.x + m[9] * direction.y + m[10] * direction.z;
 
-            //choose the smallest positive t
-            float t = (t1 > 0 && t1 < t2) ? t1 : (t2 > 0 ? t2 : Float.POSITIVE_INFINITY);
+        float a = directionX * directionX + directionY * directionY + directionZ * directionZ;
+        float b = 2.0f * (originX * directionX + originY * directionY + originZ * directionZ);
+        float c = originX * originX + originY * originY + originZ * originZ - radius * radius;
 
-            if (t != Float.POSITIVE_INFINITY) {
-                Vec3 hitPoint = transformedOrigin.add(transformedDirection.multScalar(t));
-                Vec3 normal = hitPoint.normalize();
+        float discriminant = b * b - 4.0f * a * c;
 
-                // Transform hit point and normal back to world space
-                hitPoint = transform.multVec3(hitPoint, true);
-                normal = transformInverted.transpose().multVec3(normal, false).normalize();
+        //no real solution, no intersection
+        if (discriminant < 0)
+            return Float.POSITIVE_INFINITY;
 
-                return new Intersection(t, hitPoint, normal, material);
-            }
+        //one real solution, ray tangents the sphere
+        if (Math.abs(discriminant) < RayUtils.RAY_EPSYLON) {
+            float t = -b / (2.0f * a);
+            return ray.contains(t) ? t : Float.POSITIVE_INFINITY;
         }
 
-        return null;
+        //two real solutions, ray intersects the sphere
+        float sqrtDiscriminant = (float) Math.sqrt(discriminant);
+        float t1 = (-b - sqrtDiscriminant) / (2.0f * a);
+        float t2 = (-b + sqrtDiscriminant) / (2.0f * a);
+
+        //choose the smallest t inside the interval, a is positive so t1 is never larger than t2
+        if (ray.contains(t1))
+            return t1;
+        return ray.contains(t2) ? t2 : Float.POSITIVE_INFINITY;
     }
-}
\ No newline at end of file
+}
@@ -1,8 +1,10 @@
 package scene.models.primitives;
 
 import materials.Material;
+import raytracer.ray.HitRecord;
 import raytracer.ray.Intersection;
 import raytracer.ray.Ray;
+import scene.acceleration.AABB;
 import scene.models.Hittable;
 import utils.algebra.Vec3;
 
@@ -23,51 +25,113 @@ import static raytracer.ray.RayUtils.RAY_EPSYLON;
         this.material = material;
     }
 
+        public Vec3 getVertex0() {
+            return vertex0;
+        }
+
+        public Vec3 getVertex1() {
+            return vertex1;
+        }
+
+        public Vec3 getVertex2() {
+            return vertex2;
+        }
+
+        public Vec3 getNormal0() {
+            return normal0;
+        }
+
+        public Vec3 getNormal1() {
+            return normal1;
+        }
+
+        public Vec3 getNormal2() {
+            return normal2;
+        }
+
+        public Material getMaterial() {
+            return material;
+        }
+
+        @Override
+        public AABB getBounds() {
+            return new AABB().grow(vertex0).grow(vertex1).grow(vertex2);
+        }
+
+        @Override
+        public boolean intersect(Ray r, HitRecord record) {
+            return mollerTrumbore(r, record);
+        }
+
         @Override
-        public Intersection hit(Ray r) {
-            Vec3 edge1 = vertex1.sub(vertex0);
-            Vec3 edge2 = vertex2.sub(vertex0);
+        public Intersection buildIntersection(Ray r, HitRecord record) {
+            float t = record.distance;
+            float u = record.u;
+            float v = record.v;
+
+            // Compute the intersection point = origin + direction * t
+            Vec3 intersectionPoint = new Vec3(r.origin()).addScaledInPlace(r.direction(), t);
+
+            // Interpolate normals based on barycentric coordinates
+            Vec3 interpolatedNormal = new Vec3()
+                    .addScaledInPlace(normal0, 1 - u - v)
+                    .addScaledInPlace(normal1, u)
+                    .addScaledInPlace(normal2, v)
+                    .normalizeInPlace();
+
+            // Create and return the Intersection object
+            return new Intersection(t, intersectionPoint, interpolatedNormal, this.material, this);
+        }
 
-            // Compute the determinant (a)
-            Vec3 h = r.direction().cross(edge2);  // Using cross to compute h
-            float a = edge1.scalar(h);
+        @Override
+        public boolean occluded(Ray r) {
+            return mollerTrumbore(r, null);
+        }
+
+        /**
+         Möller–Trumbore test against the interval of the ray, with a record the ray is shortened and the barycentrics are kept
+         **/
+        private boolean mollerTrumbore(Ray r, HitRecord record) {
+            Vec3 origin = r.origin();
+            Vec3 direction = r.direction();
+
+            float edge1X = vertex1.x - vertex0.x, edge1Y = vertex1.y - vertex0.y, edge1Z = vertex1.z - vertex0.z;
+            float edge2X = vertex2.x - vertex0.x, edge2Y = vertex2.y - vertex0.y, edge2Z = vertex2.z - vertex0.z;
+
+            // Compute the determinant (a), h = direction x edge2
+            float hX = direction.y * edge2Z - edge2Y * direction.z;
+            float hY = direction.z * edge2X - edge2Z * direction.x;
+            float hZ = direction.x * edge2Y - edge2X * direction.y;
+            float a = edge1X * hX + edge1Y * hY + edge1Z * hZ;
 
             if (a > -RAY_EPSYLON && a < RAY_EPSYLON)
-                return null;    // This ray is parallel to this triangle.
+                return false;    // This ray is parallel to this triangle.
 
             float f = 1.0f / a;
-            Vec3 s = r.origin().sub(vertex0);  // Calculate s = ray origin - vertex0
-            float u = f * s.scalar(h);
+            float sX = origin.x - vertex0.x, sY = origin.y - vertex0.y, sZ = origin.z - vertex0.z;  // s = ray origin - vertex0
+            float u = f * (sX * hX + sY * hY + sZ * hZ);
 
             if (u < 0.0 || u > 1.0)
-                return null;
+                return false;
 
-            Vec3 q = s.cross(edge1);  // Compute q = s x edge1
-            float v = f * r.direction().scalar(q);
+            // q = s x edge1
+            float qX = sY * edge1Z - edge1Y * sZ;
+            float qY = sZ * edge1X - edge1Z * sX;
+            float qZ = sX * edge1Y - edge1X * sY;
+            float v = f * (direction.x * qX + direction.y * qY + direction.z * qZ);
 
             if (v < 0.0 || u + v > 1.0)
-                return null;
+                return false;
 
             // Calculate the distance to the intersection point
-            float t = f * edge2.scalar(q);
-            if (t > RAY_EPSYLON) {  // ray intersection
-                // Compute the intersection point
-                Vec3 intersectionPoint = r.origin().add(r.direction().multScalar(t)); // intersection point = origin + direction * t
-
-                // Interpolate normals based on barycentric coordinates
-                Vec3 interpolatedNormal = normal0.multScalar(1 - u - v)
-                        .add(normal1.multScalar(u))
-                        .add(normal2.multScalar(v));
+            float t = f * (edge2X * qX + edge2Y * qY + edge2Z * qZ);
+            if (!r.contains(t))
+                return false;
 
-                // Normalize interpolated normal
-                interpolatedNormal = interpolatedNormal.normalize();
-
-                // Create and return the Intersection object
-                return new Intersection(t, intersectionPoint, interpolatedNormal, this.material);
+            if (record != null) {
+                r.setTMax(t);
+                record.set(this, t, u, v);
             }
-
-            //no ray intersection
-            return null;
+            return true;
         }
 }
-
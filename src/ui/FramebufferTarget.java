@@ -0,0 +1,91 @@
+package ui;
+
+import utils.RgbColor;
+import utils.io.DataExporter;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+public class FramebufferTarget implements RenderTarget {
+
+    protected final int mWidth;
+    protected final int mHeight;
+
+    protected final BufferedImage mBufferedImage;
+
+    private final String mFileName;
+
+    /**
+     Create an in-memory framebuffer that is exported to the given file, the format follows the file extension
+     **/
+    public FramebufferTarget(int width, int height, String fileName){
+        mWidth = width;
+        mHeight = height;
+        mFileName = fileName;
+
+        mBufferedImage = new BufferedImage(mWidth, mHeight, BufferedImage.TYPE_INT_RGB);
+    }
+
+    public BufferedImage getBufferedImage(){
+        return mBufferedImage;
+    }
+
+    @Override
+    public int getWidth(){
+        return mWidth;
+    }
+
+    @Override
+    public int getHeight(){
+        return mHeight;
+    }
+
+    /**
+     Draw debug information
+     **/
+    private void setOutputLabel(String text, int recursions, int antiAliasing){
+        Graphics graphic = mBufferedImage.getGraphics();
+        graphic.setColor(Color.black);
+        graphic.fill3DRect(0,mHeight - 30,mWidth,mHeight,true);
+        graphic.setColor(Color.green);
+        graphic.drawString("Elapsed rendering time: " + text + " sec, Max Number of Samples: " + recursions + ", AA: x" + antiAliasing, 10, mHeight - 10);
+        graphic.dispose();
+
+        update();
+    }
+
+    /**
+     Draw pixel to our framebuffer
+     **/
+    @Override
+    public void setPixel(RgbColor color, int x, int y){
+        mBufferedImage.setRGB(x, y, color.getRGB());
+    }
+
+    /**
+     Draw packed pixel to our framebuffer
+     **/
+    @Override
+    public void setPixel(int rgb, int x, int y){
+        mBufferedImage.setRGB(x, y, rgb);
+    }
+
+    /**
+     Nothing to show without a window
+     **/
+    @Override
+    public void update(){
+    }
+
+    /**
+     Export the rendering to an image with rendering information
+     **/
+    @Override
+    public void exportRendering(String text, int recursions, int antiAliasing, boolean showLabel){
+
+        if(showLabel) {
+            setOutputLabel(text, recursions, antiAliasing);
+        }
+        DataExporter.exportImage(mBufferedImage, mFileName);
+    }
+}
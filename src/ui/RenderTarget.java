@@ -0,0 +1,34 @@
+package ui;
+
+import utils.RgbColor;
+
+/*
+    Destination of the rendered pixels. The Swing Window is one implementation,
+    FramebufferTarget renders into memory only and works on headless machines.
+ */
+public interface RenderTarget {
+
+    int getWidth();
+
+    int getHeight();
+
+    /**
+     Write a pixel, it only becomes visible after the next update
+     **/
+    void setPixel(RgbColor color, int x, int y);
+
+    /**
+     Write a pixel packed as RGB integer, it only becomes visible after the next update
+     **/
+    void setPixel(int rgb, int x, int y);
+
+    /**
+     Show all pixels written since the last update
+     **/
+    void update();
+
+    /**
+     Export the rendering to an image file with rendering information
+     **/
+    void exportRendering(String text, int recursions, int antiAliasing, boolean showLabel);
+}
@@ -1,19 +1,8 @@
 package ui;
 
-import utils.RgbColor;
-import utils.algebra.Vec2;
-import utils.io.DataExporter;
-
 import javax.swing.*;
-import java.awt.*;
-import java.awt.image.BufferedImage;
-
-public class Window {
-
-    private int mWidth;
-    private int mHeight;
 
-    private BufferedImage mBufferedImage;
+public class Window extends FramebufferTarget {
 
     private JFrame mFrame;
 
@@ -21,19 +10,12 @@ public class Window {
      Create render window with the given dimensions
      **/
     public Window(int width, int height){
-        mWidth = width;
-        mHeight = height;
-
         // we are using only one frame
-        mBufferedImage = new BufferedImage(mWidth, mHeight, BufferedImage.TYPE_INT_RGB);
+        super(width, height, "raytracing.png");
 
         createFrame();
     }
 
-    public BufferedImage getBufferedImage(){
-        return mBufferedImage;
-    }
-
     public JFrame getJFrame() {
         return mFrame;
     }
@@ -54,36 +36,10 @@ public class Window {
     }
 
     /**
-     Draw debug information
+     Repaint the frame once for all pixels written since the last update
      **/
-    private void setOutputLabel(String text, int recursions, int antiAliasing){
-        Graphics graphic = mBufferedImage.getGraphics();
-        graphic.setColor(Color.black);
-        graphic.fill3DRect(0,mHeight - 30,mWidth,mHeight,true);
-        graphic.setColor(Color.green);
-        graphic.drawString("Elapsed rendering time: " + text + " sec, Max Number of Samples: " + recursions + ", AA: x" + antiAliasing, 10, mHeight - 10);
-
+    @Override
+    public void update(){
         mFrame.repaint();
     }
-
-    /**
-     Draw pixel to our render frame
-     **/
-    public void setPixel(RgbColor color, int x, int y){
-        mBufferedImage.setRGB(x, y, color.getRGB());
-        mFrame.repaint();
-    }
-
-    /**
-     Export the rendering to an PNG image with rendering information
-     **/
-    public void exportRendering(String text, int recursions, int antiAliasing, boolean showLabel){
-
-        if(showLabel) {
-            setOutputLabel(text, recursions, antiAliasing);
-        }
-        DataExporter.exportImageToPng(mBufferedImage, "raytracing.png");
-    }
-
-
 }
@@ -36,6 +36,10 @@ public class RgbColor {
         //this.clamp();
     }
 
+    public RgbColor(RgbColor color){
+        colors = new Vec3(color.colors);
+    }
+
     public RgbColor(Vec3 color){
         colors = color;
 
@@ -76,9 +80,57 @@ public class RgbColor {
         return new RgbColor( colors.multScalar(value) );
     }
 
+    /*
+        In-place variants for the render hot path. They modify this color and return it
+        for chaining, never call them on the shared constants or on material colors.
+     */
+
+    public RgbColor set(float r, float g, float b){
+        colors.set(r, g, b);
+        return this;
+    }
+
+    public RgbColor set(RgbColor color){
+        colors.set(color.colors);
+        return this;
+    }
+
+    public RgbColor addInPlace(RgbColor color){
+        colors.addInPlace(color.colors);
+        return this;
+    }
+
+    public RgbColor addScaledInPlace(RgbColor color, float value){
+        colors.addScaledInPlace(color.colors, value);
+        return this;
+    }
+
+    public RgbColor multRGBInPlace(RgbColor color){
+        colors.x *= color.red();
+        colors.y *= color.green();
+        colors.z *= color.blue();
+        return this;
+    }
+
+    public RgbColor multScalarInPlace(float value){
+        colors.multScalarInPlace(value);
+        return this;
+    }
+
+    public boolean isBlack(){
+        return this.red() == 0 && this.green() == 0 && this.blue() == 0;
+    }
+
+    public float maxComponent(){
+        return Math.max(this.red(), Math.max(this.green(), this.blue()));
+    }
+
     public int getRGB(){
-        this.clamp();
-        return ((int) (this.red() * 255f) << 16) + ((int) (this.green() * 255f) << 8) + ((int) (this.blue() * 255f));
+        //clamp a copy of the channels, the color itself may still be accumulated by another thread
+        float r = Math.clamp(this.red(), 0f, 1f);
+        float g = Math.clamp(this.green(), 0f, 1f);
+        float b = Math.clamp(this.blue(), 0f, 1f);
+        return ((int) (r * 255f) << 16) + ((int) (g * 255f) << 8) + ((int) (b * 255f));
     }
 
     public RgbColor square(){
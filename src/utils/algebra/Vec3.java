@@ -23,6 +23,15 @@ public class Vec3 {
         this.z = 0;
     }
 
+    /**
+     Copy constructor
+     **/
+    public Vec3(Vec3 inputVec){
+        this.x = inputVec.x;
+        this.y = inputVec.y;
+        this.z = inputVec.z;
+    }
+
     /**
      Compare two vectors to check if they are equal
      **/
@@ -91,6 +100,100 @@ public class Vec3 {
         );
     }
 
+    /*
+        In-place variants for the render hot path. They modify this vector and return it
+        for chaining, so they must only be used on vectors that are not shared.
+     */
+
+    /**
+     Set all components
+     **/
+    public Vec3 set(float x, float y, float z){
+        this.x = x;
+        this.y = y;
+        this.z = z;
+        return this;
+    }
+
+    /**
+     Copy all components of the given vector
+     **/
+    public Vec3 set(Vec3 inputVec){
+        return set(inputVec.x, inputVec.y, inputVec.z);
+    }
+
+    /**
+     Add the given vector to this vector
+     **/
+    public Vec3 addInPlace(Vec3 inputVec){
+        this.x += inputVec.x;
+        this.y += inputVec.y;
+        this.z += inputVec.z;
+        return this;
+    }
+
+    /**
+     Subtract the given vector from this vector
+     **/
+    public Vec3 subInPlace(Vec3 inputVec){
+        this.x -= inputVec.x;
+        this.y -= inputVec.y;
+        this.z -= inputVec.z;
+        return this;
+    }
+
+    /**
+     Add the given vector multiplied by the given value to this vector (fused multiply add)
+     **/
+    public Vec3 addScaledInPlace(Vec3 inputVec, float value){
+        this.x += inputVec.x * value;
+        this.y += inputVec.y * value;
+        this.z += inputVec.z * value;
+        return this;
+    }
+
+    /**
+     Multiply every component of this vector with the given value
+     **/
+    public Vec3 multScalarInPlace(float value){
+        this.x *= value;
+        this.y *= value;
+        this.z *= value;
+        return this;
+    }
+
+    /**
+     Flip this vector
+     **/
+    public Vec3 negateInPlace(){
+        return set(-this.x, -this.y, -this.z);
+    }
+
+    /**
+     Scale this vector to unit length
+     **/
+    public Vec3 normalizeInPlace(){
+        return multScalarInPlace(1f / this.length());
+    }
+
+    /**
+     Set this vector to the difference of the given vectors
+     **/
+    public Vec3 setSub(Vec3 a, Vec3 b){
+        return set(a.x - b.x, a.y - b.y, a.z - b.z);
+    }
+
+    /**
+     Set this vector to the cross product of the given vectors, this may be one of them
+     **/
+    public Vec3 setCross(Vec3 a, Vec3 b){
+        return set(
+                a.y * b.z - b.y * a.z,
+                a.z * b.x - b.z * a.x,
+                a.x * b.y - b.x * a.y
+        );
+    }
+
     /**
      Print values
      **/
@@ -7,9 +7,23 @@ import java.io.File;
 
 public class DataExporter {
     public static void exportImageToPng(BufferedImage image, String fileName){
+        exportImage(image, fileName, "png");
+    }
+
+    /**
+     Export in the format given by the file extension, PNG if there is none
+     **/
+    public static void exportImage(BufferedImage image, String fileName){
+        int dot = fileName.lastIndexOf('.');
+        String format = dot >= 0 ? fileName.substring(dot + 1).toLowerCase() : "png";
+        exportImage(image, fileName, format);
+    }
+
+    public static void exportImage(BufferedImage image, String fileName, String format){
         File outFile = new File(fileName);
         try {
-            ImageIO.write(image, "png", outFile);
+            if (!ImageIO.write(image, format, outFile))
+                System.err.println("No image writer for format " + format);
         } catch (Exception e) {
             System.err.println(e.getMessage()); // print any DataExporter errors to stderr.
         }
@@ -4,83 +4,193 @@ package utils.io;
 //import javafx.scene.shape.MeshView;
 
 import materials.Material;
+import scene.models.MeshData;
+import scene.acceleration.KernelType;
 import scene.models.SceneObject;
 import scene.models.Transform;
+import scene.models.TriangleMesh;
+import scene.models.TriangleModel;
 import scene.models.primitives.Triangle;
+import utils.RgbColor;
+import utils.algebra.Matrix4x4;
 import utils.algebra.Vec3;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 public class DataImporter {
 
+	//binary copies of imported meshes, null to parse every time
+	private static MeshCache meshCache;
+
 	public DataImporter() {}
 
-	public static List<SceneObject> loadObjFile(String filePath, Transform transform, Material material) {
-		List<Vec3> vertices = new ArrayList<>();
-		List<Vec3> normals = new ArrayList<>();
-		List<SceneObject> triangles = new ArrayList<>();
+	/**
+	 Keep a binary copy of every imported OBJ file in the directory and load it instead of the text as long as
+	 the source is unchanged, null turns the cache off
+	 **/
+	public static void setMeshCacheDirectory(String directory) {
+		meshCache = directory != null ? new MeshCache(Path.of(directory)) : null;
+	}
+
+	/**
+	 Load the triangles in object space, to be shared between several MeshInstances
+	 **/
+	public static List<SceneObject> loadObjFile(String filePath, Material material) {
+		return loadObjFile(filePath, new Transform(new Vec3(0, 0, 0)), material);
+	}
 
+	/**
+	 Load an OBJ file into flat vertex and index buffers, parsed in parallel on all cores or read from the mesh cache
+	 **/
+	public static MeshData loadObjMesh(String filePath) {
+		return loadCachedObj(filePath).mesh();
+	}
+
+	/**
+	 Load the triangles in object space as a model, to be shared between several MeshInstances. With the mesh cache the
+	 tree of the model is cached as well, a later load skips both the parser and the build of the tree
+	 **/
+	public static TriangleModel loadObjModel(String filePath, Material material, RgbColor ambientLight, KernelType kernel) {
+		MeshCache.Entry entry = loadCachedObj(filePath);
+		//straight into the indexed mesh of the model, no Triangle objects are created
+		Material[] materials = loadMaterials(filePath, entry.mesh(), material, ambientLight);
+		TriangleMesh mesh = TriangleMesh.of(entry.mesh(), new Transform(new Vec3(0, 0, 0)), materials, material);
+
+		//without a cached layout, or with one of another kernel width, the tree is built and replaces it
+		long start = System.currentTimeMillis();
+		return new TriangleModel(mesh, kernel, entry.layout(), layout -> {
+			if (entry.key() != null) {
+				Log.print(DataImporter.class, "Built the tree of " + filePath + " in " + (System.currentTimeMillis() - start) + " ms");
+				writeCache(new MeshCache.Entry(entry.key(), entry.mesh(), layout));
+			}
+		});
+	}
+
+	/**
+	 The mesh of the file from the cache, parsed and added to the cache if it is not there. Without a cache the key is null
+	 **/
+	private static MeshCache.Entry loadCachedObj(String filePath) {
+		long start = System.currentTimeMillis();
+
+		MeshCache.Entry entry = null;
 		try {
-			BufferedReader br = new BufferedReader(new FileReader(filePath));
-			String line;
-
-			while ((line = br.readLine()) != null) {
-				line = line.trim();
-				String[] parts = line.split(" ");
-
-				if (line.startsWith("v ")) { // Vertex
-					float x = Float.parseFloat(parts[1]);
-					float y = Float.parseFloat(parts[2]);
-					float z = Float.parseFloat(parts[3]);
-					vertices.add(new Vec3(x, y, z));
-
-				} else if (line.startsWith("vn ")) { // Vertex Normal
-					float nx = Float.parseFloat(parts[1]);
-					float ny = Float.parseFloat(parts[2]);
-					float nz = Float.parseFloat(parts[3]);
-					normals.add(new Vec3(nx, ny, nz));
-
-				} else if (line.startsWith("f ")) { // Face;
-					String[] v1 = parts[1].split("//");
-					String[] v2 = parts[2].split("//");
-					String[] v3 = parts[3].split("//");
-
-					// Indexes are 1-based in the .obj
-					int vertexIndex1 = Integer.parseInt(v1[0]) - 1;
-					int normalIndex1 = Integer.parseInt(v1[1]) - 1;
-
-					int vertexIndex2 = Integer.parseInt(v2[0]) - 1;
-					int normalIndex2 = Integer.parseInt(v2[1]) - 1;
-
-					int vertexIndex3 = Integer.parseInt(v3[0]) - 1;
-					int normalIndex3 = Integer.parseInt(v3[1]) - 1;
-
-					triangles.add(
-						new Triangle(
-							transform.getMatrix().multVec3(vertices.get(vertexIndex1), true),
-							transform.getMatrix().invert().transpose().multVec3(normals.get(normalIndex1), true),
-							transform.getMatrix().multVec3(vertices.get(vertexIndex2), true),
-							transform.getMatrix().invert().transpose().multVec3(normals.get(normalIndex2), true),
-							transform.getMatrix().multVec3(vertices.get(vertexIndex3), true),
-							transform.getMatrix().invert().transpose().multVec3(normals.get(normalIndex3), true),
-							material
-						)
-					);
-				}
+			MeshCache.Key key = meshCache != null ? meshCache.key(Path.of(filePath)) : null;
+			if (key != null)
+				entry = meshCache.read(key);
+
+			if (entry != null) {
+				Log.print(DataImporter.class, "Loaded " + entry.mesh().getTriangleCount() + " triangles of " + filePath + " from the mesh cache in " + (System.currentTimeMillis() - start) + " ms");
+				return entry;
 			}
 
-			br.close();
+			entry = new MeshCache.Entry(key, ObjParser.parse(filePath), null);
+		} catch (IOException e) {
+			throw new RuntimeException("Failed to load " + filePath + ": " + e.getMessage(), e);
+		}
+
+		Log.print(DataImporter.class, "Loaded " + entry.mesh().getTriangleCount() + " triangles from " + filePath + " in " + (System.currentTimeMillis() - start) + " ms");
+		if (entry.key() != null)
+			writeCache(entry);
+		return entry;
+	}
+
+	//the cache only saves time, a failed write is not an error of the import
+	private static void writeCache(MeshCache.Entry entry) {
+		try {
+			meshCache.write(entry.key(), entry.mesh(), entry.layout());
+		} catch (IOException e) {
+			Log.warn(DataImporter.class, "Could not write the mesh cache of " + entry.key().source() + ": " + e);
+		}
+	}
+
+	/**
+	 Load the triangles with the materials of the MTL libraries the file refers to, without ambient light.
+	 The given material is used for faces without a material or with one the libraries do not define
+	 **/
+	public static List<SceneObject> loadObjFile(String filePath, Transform transform, Material material) {
+		return loadObjFile(filePath, transform, material, RgbColor.BLACK);
+	}
 
-		} catch (Exception e) {
-			throw new RuntimeException(e);
+	/**
+	 Load the triangles with the materials of the MTL libraries the file refers to, lit by the given ambient light
+	 in the Whitted integrator. The given material is used for faces without a material or with an unknown one
+	 **/
+	public static List<SceneObject> loadObjFile(String filePath, Transform transform, Material material, RgbColor ambientLight) {
+		return createTriangles(filePath, loadObjMesh(filePath), transform, material, ambientLight);
+	}
+
+	private static List<SceneObject> createTriangles(String filePath, MeshData obj, Transform transform, Material material, RgbColor ambientLight) {
+		Material[] materials = loadMaterials(filePath, obj, material, ambientLight);
+
+		//every vertex and normal is transformed once and shared by all triangles using it
+		float[] positions = obj.getPositions();
+		Vec3[] vertices = new Vec3[positions.length / 3];
+		for (int i = 0; i < vertices.length; i++)
+			vertices[i] = transform.transformPoint(new Vec3(positions[i * 3], positions[i * 3 + 1], positions[i * 3 + 2]), new Vec3());
+
+		float[] normalValues = obj.getNormals();
+		Matrix4x4 normalMatrix = transform.getNormalMatrix();
+		Vec3[] normals = new Vec3[normalValues.length / 3];
+		for (int i = 0; i < normals.length; i++)
+			normals[i] = normalMatrix.transformVector(new Vec3(normalValues[i * 3], normalValues[i * 3 + 1], normalValues[i * 3 + 2]), new Vec3());
+
+		int[] positionIndices = obj.getPositionIndices();
+		int[] normalIndices = obj.getNormalIndices();
+		int[] materialIds = obj.getMaterialIds();
+		List<SceneObject> triangles = new ArrayList<>(obj.getTriangleCount());
+
+		//the parser generated normals for all faces without, every corner has one
+		for (int t = 0; t < obj.getTriangleCount(); t++) {
+			int corner = t * 3;
+			triangles.add(
+				new Triangle(
+					vertices[positionIndices[corner]], normals[normalIndices[corner]],
+					vertices[positionIndices[corner + 1]], normals[normalIndices[corner + 1]],
+					vertices[positionIndices[corner + 2]], normals[normalIndices[corner + 2]],
+					materialIds[t] >= 0 ? materials[materialIds[t]] : material
+				)
+			);
 		}
+
 		return triangles;
 	}
 
+	/**
+	 The material for every material name of the mesh, from the libraries next to the OBJ file
+	 **/
+	private static Material[] loadMaterials(String filePath, MeshData obj, Material fallback, RgbColor ambientLight) {
+		Path directory = Path.of(filePath).toAbsolutePath().getParent();
+		List<Path> libraries = new ArrayList<>();
+		for (String library : obj.getMaterialLibraries())
+			libraries.add(directory.resolve(library));
+
+		Map<String, Material> library;
+		try {
+			library = MtlParser.load(libraries, ambientLight);
+		} catch (IOException e) {
+			throw new RuntimeException("Failed to load the materials of " + filePath + ": " + e.getMessage(), e);
+		}
+
+		String[] names = obj.getMaterialNames();
+		Material[] materials = new Material[names.length];
+		for (int i = 0; i < names.length; i++) {
+			materials[i] = library.get(names[i]);
+			if (materials[i] == null) {
+				Log.warn(DataImporter.class, "Material " + names[i] + " of " + filePath + " is not defined, using the default material");
+				materials[i] = fallback;
+			}
+		}
+
+		if (!library.isEmpty())
+			Log.print(DataImporter.class, "Mapped " + library.size() + " materials of " + filePath + " to " + library.values().stream().distinct().count() + " instances");
+		return materials;
+	}
+
 
 
 	public static void loadOBJ(String path) {
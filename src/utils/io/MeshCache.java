@@ -0,0 +1,401 @@
+package utils.io;
+
+import scene.acceleration.BVH;
+import scene.models.MeshData;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.zip.CRC32C;
+
+/*
+    Binary copies of imported meshes, so a mesh is parsed only once.
+
+    A cache file belongs to the content of its source: its name holds the file name of the
+    source, a hash of its absolute path and the CRC32C of its content, its header the size
+    and checksum again. A changed source simply misses the cache, sources of the same name
+    in different directories each keep their own file. The file starts with a magic number and a format version, files of another
+    version are ignored and written again. After the header follow the buffers of the
+    MeshData as they are in memory, little endian, then the material names and libraries
+    and optionally the layout of the BVH of the mesh in object space.
+
+    Loading maps the file and copies every buffer with a single bulk get, there is nothing
+    to parse or convert. Java arrays cannot live in the mapping itself, but the copy runs at
+    memory speed.
+
+    Layout of a file, all counts are ints:
+    magic, version, source size (long), source checksum (long), position, normal, texture
+    coordinate, triangle, material and library count, 1 if a BVH layout follows, the float and
+    int buffers, the strings as byte count and UTF-8 bytes, then the BVH layout: leaf width,
+    max depth, node count, object count, unbounded object count, bounds, node bounds, node
+    offsets, node counts, object indices and unbounded object indices.
+ */
+public final class MeshCache {
+
+    private static final int MAGIC = 0x4D474356; //"VCGM" in little endian
+    private static final int VERSION = 1;
+
+    private static final String EXTENSION = ".mesh";
+
+    //buffers are mapped in windows of at most this size, a single mapping is limited to 2 GB
+    private static final long MAX_WINDOW_SIZE = 1L << 30;
+
+    private final Path directory;
+
+    public MeshCache(Path directory) {
+        this.directory = directory;
+    }
+
+    /*
+        Identifies the content of a source file
+     */
+    public record Key(Path source, long size, long checksum) {}
+
+    /*
+        A cached mesh, with the layout of its BVH or null if none was stored
+     */
+    public record Entry(Key key, MeshData mesh, BVH.Layout layout) {}
+
+    /**
+     Key of the current content of the source, reads the whole file once
+     **/
+    public Key key(Path source) throws IOException {
+        CRC32C checksum = new CRC32C();
+        long size;
+        try (FileChannel channel = FileChannel.open(source, StandardOpenOption.READ)) {
+            size = channel.size();
+            for (long start = 0; start < size; start += MAX_WINDOW_SIZE)
+                checksum.update(channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(size - start, MAX_WINDOW_SIZE)));
+        }
+        return new Key(source, size, checksum.getValue());
+    }
+
+    /**
+     The cached mesh of the key, null if there is none. A cache file that cannot be read is reported and treated as missing
+     **/
+    public Entry read(Key key) {
+        Path file = cacheFile(key);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            Reader in = new Reader(channel);
+
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                Log.warn(this, "Ignoring " + file + ", it was written by another version");
+                return null;
+            }
+            if (in.readLong() != key.size() || in.readLong() != key.checksum()) {
+                Log.warn(this, "Ignoring " + file + ", it does not belong to " + key.source());
+                return null;
+            }
+
+            int positionCount = in.readInt();
+            int normalCount = in.readInt();
+            int texCoordCount = in.readInt();
+            int triangleCount = in.readInt();
+            int materialCount = in.readInt();
+            int libraryCount = in.readInt();
+            boolean hasLayout = in.readInt() != 0;
+
+            float[] positions = in.readFloats(Math.multiplyExact(positionCount, 3));
+            float[] normals = in.readFloats(Math.multiplyExact(normalCount, 3));
+            float[] texCoords = in.readFloats(Math.multiplyExact(texCoordCount, 2));
+            int[] positionIndices = in.readInts(Math.multiplyExact(triangleCount, 3));
+            int[] normalIndices = in.readInts(triangleCount * 3);
+            int[] texCoordIndices = in.readInts(triangleCount * 3);
+            int[] materialIds = in.readInts(triangleCount);
+            String[] materialNames = in.readStrings(materialCount);
+            String[] libraries = in.readStrings(libraryCount);
+
+            MeshData mesh = new MeshData(positions, normals, texCoords, positionIndices, normalIndices, texCoordIndices,
+                    materialIds, materialNames, libraries);
+
+            BVH.Layout layout = null;
+            if (hasLayout) {
+                int leafWidth = in.readInt();
+                int maxDepth = in.readInt();
+                int nodeCount = in.readInt();
+                int objectCount = in.readInt();
+                int unboundedCount = in.readInt();
+                layout = new BVH.Layout(leafWidth, maxDepth, in.readFloats(6), in.readFloats(Math.multiplyExact(nodeCount, 6)),
+                        in.readInts(nodeCount), in.readInts(nodeCount), in.readInts(objectCount), in.readInts(unboundedCount));
+            }
+
+            if (!isValid(mesh)) {
+                Log.warn(this, "Ignoring " + file + ", it references data it does not contain");
+                return null;
+            }
+            return new Entry(key, mesh, layout);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException | BufferUnderflowException | IllegalArgumentException | ArithmeticException e) {
+            //a truncated file or counts that do not fit the file
+            Log.warn(this, "Ignoring " + file + ", it cannot be read: " + e);
+            return null;
+        }
+    }
+
+    /**
+     Store the mesh and optionally the layout of its BVH for the key, replacing the cache files of earlier contents
+     of the source. The file is written under another name and moved in place, readers never see half a file
+     **/
+    public void write(Key key, MeshData mesh, BVH.Layout layout) throws IOException {
+        Files.createDirectories(directory);
+        Path file = cacheFile(key);
+        //unique per writer, with the default permissions of new files unlike a temporary file
+        Path temporary = directory.resolve(file.getFileName() + "." + Long.toHexString(ThreadLocalRandom.current().nextLong()) + ".tmp");
+
+        try {
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE, StandardOpenOption.CREATE_NEW)) {
+                Writer out = new Writer(channel);
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(key.size());
+                out.writeLong(key.checksum());
+
+                out.writeInt(mesh.getPositionCount());
+                out.writeInt(mesh.getNormalCount());
+                out.writeInt(mesh.getTexCoordCount());
+                out.writeInt(mesh.getTriangleCount());
+                out.writeInt(mesh.getMaterialNames().length);
+                out.writeInt(mesh.getMaterialLibraries().length);
+                out.writeInt(layout != null ? 1 : 0);
+
+                out.writeFloats(mesh.getPositions());
+                out.writeFloats(mesh.getNormals());
+                out.writeFloats(mesh.getTexCoords());
+                out.writeInts(mesh.getPositionIndices());
+                out.writeInts(mesh.getNormalIndices());
+                out.writeInts(mesh.getTexCoordIndices());
+                out.writeInts(mesh.getMaterialIds());
+                out.writeStrings(mesh.getMaterialNames());
+                out.writeStrings(mesh.getMaterialLibraries());
+
+                if (layout != null) {
+                    out.writeInt(layout.leafWidth());
+                    out.writeInt(layout.maxDepth());
+                    out.writeInt(layout.nodeCounts().length);
+                    out.writeInt(layout.objectIndices().length);
+                    out.writeInt(layout.unboundedIndices().length);
+                    out.writeFloats(layout.bounds());
+                    out.writeFloats(layout.nodeBounds());
+                    out.writeInts(layout.nodeOffsets());
+                    out.writeInts(layout.nodeCounts());
+                    out.writeInts(layout.objectIndices());
+                    out.writeInts(layout.unboundedIndices());
+                }
+                out.flush();
+            }
+
+            removeOutdated(key);
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    private Path cacheFile(Key key) {
+        return directory.resolve(sourcePrefix(key.source()) + Long.toHexString(key.checksum()) + EXTENSION);
+    }
+
+    /**
+     Start of the names of all cache files of the source: its file name and the CRC32C of its normalized absolute path
+     **/
+    private static String sourcePrefix(Path source) {
+        CRC32C pathHash = new CRC32C();
+        pathHash.update(source.toAbsolutePath().normalize().toString().getBytes(StandardCharsets.UTF_8));
+        return source.getFileName() + "." + Long.toHexString(pathHash.getValue()) + ".";
+    }
+
+    /**
+     Delete the cache files of the same source with another checksum
+     **/
+    private void removeOutdated(Key key) throws IOException {
+        Path current = cacheFile(key);
+        String prefix = sourcePrefix(key.source());
+        //a filter instead of a glob, the file name of the source may contain glob characters
+        DirectoryStream.Filter<Path> sameSource = file -> {
+            String name = file.getFileName().toString();
+            return name.startsWith(prefix) && name.endsWith(EXTENSION);
+        };
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, sameSource)) {
+            for (Path file : files) {
+                //a name with dots could match a longer one, only the checksum may differ
+                String checksum = file.getFileName().toString().substring(prefix.length());
+                if (!file.equals(current) && checksum.indexOf('.') == checksum.length() - EXTENSION.length())
+                    Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    /**
+     True if every index of the mesh is inside of its buffers, a mesh from a damaged file must not crash the renderer later
+     **/
+    private static boolean isValid(MeshData mesh) {
+        return inRange(mesh.getPositionIndices(), 0, mesh.getPositionCount())
+                && inRange(mesh.getNormalIndices(), -1, mesh.getNormalCount())
+                && inRange(mesh.getTexCoordIndices(), -1, mesh.getTexCoordCount())
+                && inRange(mesh.getMaterialIds(), -1, mesh.getMaterialNames().length);
+    }
+
+    private static boolean inRange(int[] indices, int min, int count) {
+        for (int index : indices) {
+            if (index < min || index >= count)
+                return false;
+        }
+        return true;
+    }
+
+    /*
+        Reads values one after the other, buffers are copied out of mappings of the file
+     */
+    private static final class Reader {
+        private final FileChannel channel;
+        private final ByteBuffer scalar = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+        private long position;
+
+        Reader(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        int readInt() throws IOException {
+            return readScalar(4).getInt();
+        }
+
+        long readLong() throws IOException {
+            return readScalar(8).getLong();
+        }
+
+        private ByteBuffer readScalar(int size) throws IOException {
+            scalar.clear().limit(size);
+            while (scalar.hasRemaining()) {
+                if (channel.read(scalar, position + scalar.position()) < 0)
+                    throw new BufferUnderflowException();
+            }
+            position += size;
+            return scalar.flip();
+        }
+
+        float[] readFloats(int count) throws IOException {
+            float[] values = new float[count];
+            int done = 0;
+            while (done < count) {
+                int length = (int) Math.min(count - done, MAX_WINDOW_SIZE / 4);
+                map(length * 4L).asFloatBuffer().get(values, done, length);
+                done += length;
+            }
+            return values;
+        }
+
+        int[] readInts(int count) throws IOException {
+            int[] values = new int[count];
+            int done = 0;
+            while (done < count) {
+                int length = (int) Math.min(count - done, MAX_WINDOW_SIZE / 4);
+                map(length * 4L).asIntBuffer().get(values, done, length);
+                done += length;
+            }
+            return values;
+        }
+
+        String[] readStrings(int count) throws IOException {
+            String[] values = new String[count];
+            for (int i = 0; i < count; i++) {
+                byte[] bytes = new byte[readInt()];
+                map(bytes.length).get(bytes);
+                values[i] = new String(bytes, StandardCharsets.UTF_8);
+            }
+            return values;
+        }
+
+        /**
+         Map the next size bytes, past the end of the file the mapping would grow it, which is a damaged file here
+         **/
+        private ByteBuffer map(long size) throws IOException {
+            if (position + size > channel.size())
+                throw new BufferUnderflowException();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+            position += size;
+            return buffer.order(ByteOrder.LITTLE_ENDIAN);
+        }
+    }
+
+    /*
+        Writes values one after the other through a direct buffer
+     */
+    private static final class Writer {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+
+        Writer(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        void writeInt(int value) throws IOException {
+            ensureRemaining(4);
+            buffer.putInt(value);
+        }
+
+        void writeLong(long value) throws IOException {
+            ensureRemaining(8);
+            buffer.putLong(value);
+        }
+
+        void writeFloats(float[] values) throws IOException {
+            int done = 0;
+            while (done < values.length) {
+                ensureRemaining(4);
+                int length = Math.min(values.length - done, buffer.remaining() / 4);
+                buffer.asFloatBuffer().put(values, done, length);
+                buffer.position(buffer.position() + length * 4);
+                done += length;
+            }
+        }
+
+        void writeInts(int[] values) throws IOException {
+            int done = 0;
+            while (done < values.length) {
+                ensureRemaining(4);
+                int length = Math.min(values.length - done, buffer.remaining() / 4);
+                buffer.asIntBuffer().put(values, done, length);
+                buffer.position(buffer.position() + length * 4);
+                done += length;
+            }
+        }
+
+        void writeStrings(String[] values) throws IOException {
+            for (String value : values) {
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                writeInt(bytes.length);
+                int done = 0;
+                while (done < bytes.length) {
+                    ensureRemaining(1);
+                    int length = Math.min(bytes.length - done, buffer.remaining());
+                    buffer.put(bytes, done, length);
+                    done += length;
+                }
+            }
+        }
+
+        private void ensureRemaining(int size) throws IOException {
+            if (buffer.remaining() < size)
+                flush();
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining())
+                channel.write(buffer);
+            buffer.clear();
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package utils.io;
+
+import materials.Material;
+import materials.ReflectiveMaterial;
+import materials.RefractiveMaterial;
+import materials.UnlitMaterial;
+import utils.RgbColor;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+    Reader for Wavefront MTL material libraries, the materials referenced by OBJ files.
+
+    Every MTL material is mapped to the closest material of the renderer:
+    - an emission (Ke) gives an UnlitMaterial that lights the scene
+    - transparency (d below 1, Tr above 0 or illum 4, 6, 7 or 9) gives a RefractiveMaterial with Ni as index of refraction
+    - illum 3, ray traced reflection, with a specular color (Ks) gives a metallic ReflectiveMaterial, the
+      shininess (Ns) is the exponent of its lobe and its roughness in the Whitted integrator
+    - everything else is a diffuse ReflectiveMaterial with the diffuse color (Kd) and a Phong highlight from Ks and Ns
+
+    The ambient color (Ka) is left out: in the renderer the ambient light is part of the material and
+    scaled by its diffuse color, which is what Ka usually repeats. Materials that map to the same
+    parameters share one instance, like the white walls and boxes of the Cornell box.
+ */
+public final class MtlParser {
+
+    //defaults of the format for statements a material leaves out
+    private static final float DEFAULT_SHININESS = 0;
+    private static final float DEFAULT_IOR = 1.5f;
+
+    private MtlParser() {}
+
+    /**
+     Read all libraries and map their materials by name, a name defined twice keeps its last definition.
+     Libraries that do not exist are skipped with a warning, as the OBJ file is still usable without them
+     **/
+    public static Map<String, Material> load(List<Path> libraries, RgbColor ambientLight) throws IOException {
+        Map<String, Parameters> parameters = new LinkedHashMap<>();
+        for (Path library : libraries) {
+            try {
+                parse(library, parameters);
+            } catch (NoSuchFileException e) {
+                Log.warn(MtlParser.class, "Material library " + library + " does not exist");
+            }
+        }
+
+        Map<Parameters, Material> instances = new HashMap<>();
+        Map<String, Material> materials = new LinkedHashMap<>();
+        parameters.forEach((name, p) -> materials.put(name, instances.computeIfAbsent(p, key -> key.toMaterial(ambientLight))));
+        return materials;
+    }
+
+    private static void parse(Path library, Map<String, Parameters> materials) throws IOException {
+        List<String> lines = Files.readAllLines(library);
+
+        String name = null;
+        Builder builder = null;
+
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i);
+            int comment = line.indexOf('#');
+            if (comment >= 0)
+                line = line.substring(0, comment);
+
+            String[] tokens = line.trim().split("\\s+");
+            String keyword = tokens[0];
+            if (keyword.isEmpty())
+                continue;
+
+            try {
+                if (keyword.equals("newmtl")) {
+                    if (builder != null)
+                        materials.put(name, builder.build());
+                    name = line.trim().substring(keyword.length()).trim();
+                    if (name.isEmpty())
+                        throw new IOException("expected a material name");
+                    builder = new Builder();
+                    continue;
+                }
+
+                //statements before the first material and ones the renderer has no use for, like texture maps
+                if (builder == null)
+                    continue;
+
+                switch (keyword) {
+                    case "Kd" -> builder.diffuse = readColor(tokens);
+                    case "Ks" -> builder.specular = readColor(tokens);
+                    case "Ke" -> builder.emission = readColor(tokens);
+                    case "Ns" -> builder.shininess = readFloat(tokens);
+                    case "Ni" -> builder.ior = readFloat(tokens);
+                    case "d" -> builder.dissolve = readFloat(tokens);
+                    case "Tr" -> builder.dissolve = 1 - readFloat(tokens);
+                    case "illum" -> builder.illum = (int) readFloat(tokens);
+                    default -> {}
+                }
+            } catch (IOException e) {
+                throw new IOException(library + ", line " + (i + 1) + ": " + e.getMessage(), e);
+            }
+        }
+
+        if (builder != null)
+            materials.put(name, builder.build());
+    }
+
+    /**
+     A color of three components, or a single value for all of them. Spectral and XYZ colors are not supported
+     **/
+    private static float[] readColor(String[] tokens) throws IOException {
+        if (tokens.length == 2) {
+            float value = parseFloat(tokens[1]);
+            return new float[]{value, value, value};
+        }
+        if (tokens.length != 4)
+            throw new IOException("expected a color of 3 components");
+        return new float[]{parseFloat(tokens[1]), parseFloat(tokens[2]), parseFloat(tokens[3])};
+    }
+
+    private static float readFloat(String[] tokens) throws IOException {
+        if (tokens.length != 2)
+            throw new IOException("expected a single number after " + tokens[0]);
+        return parseFloat(tokens[1]);
+    }
+
+    private static float parseFloat(String token) throws IOException {
+        try {
+            return Float.parseFloat(token);
+        } catch (NumberFormatException e) {
+            throw new IOException("expected a number, found " + token);
+        }
+    }
+
+    /*
+        The statements of one material while it is read
+     */
+    private static final class Builder {
+        float[] diffuse = {0.8f, 0.8f, 0.8f};
+        float[] specular = {0, 0, 0};
+        float[] emission = {0, 0, 0};
+        float shininess = DEFAULT_SHININESS;
+        float ior = DEFAULT_IOR;
+        float dissolve = 1;
+        int illum = 2;
+
+        /**
+         The parameters of the renderer material, only the ones that matter for its kind are set so equal materials compare equal
+         **/
+        Parameters build() {
+            float maxEmission = Math.max(emission[0], Math.max(emission[1], emission[2]));
+            if (maxEmission > 0) {
+                return new Parameters(Kind.EMISSIVE, emission[0] / maxEmission, emission[1] / maxEmission, emission[2] / maxEmission,
+                        0, 0, 0, maxEmission, 0);
+            }
+
+            if (dissolve < 1 || illum == 4 || illum == 6 || illum == 7 || illum == 9)
+                return new Parameters(Kind.REFRACTIVE, 0, 0, 0, 0, 0, 0, 0, ior);
+
+            boolean hasSpecular = specular[0] > 0 || specular[1] > 0 || specular[2] > 0;
+            Kind kind = illum == 3 && hasSpecular ? Kind.METALLIC : Kind.DIFFUSE;
+            return new Parameters(kind, diffuse[0], diffuse[1], diffuse[2], specular[0], specular[1], specular[2], shininess, 0);
+        }
+    }
+
+    private enum Kind { EMISSIVE, REFRACTIVE, METALLIC, DIFFUSE }
+
+    /*
+        Color is the emission color scaled to a maximum of 1 for emissive materials, with the scale
+        as intensity. Value is the shininess of reflective materials, ior the one of refractive ones.
+     */
+    private record Parameters(Kind kind, float colorR, float colorG, float colorB,
+                              float specularR, float specularG, float specularB, float value, float ior) {
+
+        Material toMaterial(RgbColor ambientLight) {
+            RgbColor color = new RgbColor(colorR, colorG, colorB);
+            RgbColor specular = new RgbColor(specularR, specularG, specularB);
+
+            return switch (kind) {
+                case EMISSIVE -> new UnlitMaterial(color, value);
+                case REFRACTIVE -> new RefractiveMaterial(ior);
+                //the shininess as roughness: the width of a Phong lobe of that exponent, about sqrt(2 / (n + 2))
+                case METALLIC -> new ReflectiveMaterial(color, specular, ambientLight, value, (float) Math.sqrt(2 / (value + 2)), true);
+                case DIFFUSE -> new ReflectiveMaterial(color, specular, ambientLight, value, 1f, false);
+            };
+        }
+    }
+}
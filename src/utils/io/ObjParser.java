@@ -0,0 +1,838 @@
+package utils.io;
+
+import scene.models.MeshData;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/*
+    Reader for Wavefront OBJ files that works directly on the bytes of the memory-mapped file.
+
+    The file is cut into chunks at line breaks and the chunks are parsed in parallel on the
+    common fork-join pool. Every chunk tokenizes its lines in place and parses the numbers
+    from the bytes into its own growing primitive arrays, no String, boxed number or Vec3 is
+    created per vertex or face. A second pass, again in parallel, copies the chunks behind
+    each other into the buffers of the mesh and resolves the face indices once the number
+    of all vertices is known. Files larger than a single mapping are mapped in windows that
+    end at a line break.
+
+    Reads positions (v), normals (vn), texture coordinates (vt) and faces (f) with corners given
+    as v, v/vt, v//vn or v/vt/vn. Indices count from 1, negative indices count back from the
+    last element read before the face. Faces with more than three corners are triangulated as
+    a fan around their first corner, so they have to be convex. Material libraries (mtllib),
+    the material of the following faces (usemtl) and smoothing groups (s) are read as well,
+    triangles without normals get generated ones: the face normal outside of a smoothing group,
+    normals averaged over the faces of the group sharing a vertex inside of one. Other
+    statements like groups and objects are skipped.
+ */
+public final class ObjParser {
+
+    //windows end at their last line break, a single line has to fit into one
+    private static final long MAX_WINDOW_SIZE = 1L << 30;
+
+    //large enough to keep the overhead per task low, small enough to balance the load
+    private static final int CHUNK_SIZE = 4 << 20;
+
+    //digits that always fit into a long, longer numbers go through Float.parseFloat
+    private static final int MAX_MANTISSA_DIGITS = 18;
+
+    //largest mantissa that is exact in a double
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+    //negative indices are stored below this, relative to the number of elements of the chunk read before the face
+    private static final int RELATIVE_BIAS = 1 << 30;
+
+    //powers of ten that are exact in a double
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private ObjParser() {}
+
+    /**
+     Parse the whole file, throws an IOException naming the line of the first malformed statement
+     **/
+    public static MeshData parse(String filePath) throws IOException {
+        List<Chunk> chunks = new ArrayList<>();
+
+        try (FileChannel channel = FileChannel.open(Path.of(filePath), StandardOpenOption.READ)) {
+            long size = channel.size();
+            long start = 0;
+
+            while (start < size) {
+                long length = Math.min(size - start, MAX_WINDOW_SIZE);
+                MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+
+                int end = (int) length;
+                if (start + length < size) {
+                    end = lastLineBreak(window, 0, end) + 1;
+                    if (end == 0)
+                        throw new IOException(filePath + ": a line at byte " + start + " is longer than " + MAX_WINDOW_SIZE + " bytes");
+                }
+
+                addChunks(chunks, window, end);
+                start += end;
+            }
+        }
+
+        //runs on the common fork-join pool
+        chunks.parallelStream().forEach(Chunk::parse);
+
+        //the first error in file order, all chunks before it were parsed to their end
+        long lines = 0;
+        for (Chunk chunk : chunks) {
+            if (chunk.error != null)
+                throw new IOException("Line " + (lines + chunk.line) + ": " + chunk.error);
+            lines += chunk.line;
+        }
+
+        return resolve(chunks);
+    }
+
+    /**
+     Cut a window into chunks of about CHUNK_SIZE bytes that end at line breaks
+     **/
+    private static void addChunks(List<Chunk> chunks, ByteBuffer window, int end) {
+        int start = 0;
+        while (start < end) {
+            int chunkEnd = end;
+            if (end - start > CHUNK_SIZE) {
+                int lineBreak = lastLineBreak(window, start, start + CHUNK_SIZE);
+                //a line longer than a chunk goes into a chunk of its own
+                if (lineBreak < 0)
+                    lineBreak = nextLineBreak(window, start + CHUNK_SIZE, end);
+                chunkEnd = lineBreak < 0 ? end : lineBreak + 1;
+            }
+            chunks.add(new Chunk(window, start, chunkEnd));
+            start = chunkEnd;
+        }
+    }
+
+    /**
+     Second pass: put the chunks behind each other and turn the face indices into indices of the whole mesh
+     **/
+    private static MeshData resolve(List<Chunk> chunks) throws IOException {
+        int positionCount = 0, normalCount = 0, texCoordCount = 0, triangleCount = 0;
+
+        //material names are numbered in the order they are first used, usemtl and s carry over into the next chunk
+        Map<String, Integer> materialIds = new HashMap<>();
+        Set<String> libraries = new LinkedHashSet<>();
+        int material = -1;
+        int smoothingGroup = 0;
+
+        for (Chunk chunk : chunks) {
+            chunk.materialIds = new int[chunk.materialNames.size()];
+            for (int i = 0; i < chunk.materialIds.length; i++)
+                chunk.materialIds[i] = materialIds.computeIfAbsent(chunk.materialNames.get(i), name -> materialIds.size());
+            libraries.addAll(chunk.libraries);
+
+            chunk.initialMaterial = material;
+            chunk.initialSmoothingGroup = smoothingGroup;
+            if (chunk.material >= 0)
+                material = chunk.materialIds[chunk.material];
+            if (chunk.smoothingGroup >= 0)
+                smoothingGroup = chunk.smoothingGroup;
+
+            chunk.positionOffset = positionCount;
+            chunk.normalOffset = normalCount;
+            chunk.texCoordOffset = texCoordCount;
+            chunk.triangleOffset = triangleCount;
+            positionCount = Math.addExact(positionCount, chunk.positionCount);
+            normalCount = Math.addExact(normalCount, chunk.normalCount);
+            texCoordCount = Math.addExact(texCoordCount, chunk.texCoordCount);
+            triangleCount = Math.addExact(triangleCount, chunk.triangleCount);
+        }
+
+        MeshBuffers buffers = new MeshBuffers(positionCount, normalCount, texCoordCount, triangleCount);
+        chunks.parallelStream().forEach(chunk -> chunk.copyInto(buffers));
+
+        for (Chunk chunk : chunks) {
+            if (chunk.error != null)
+                throw new IOException(chunk.error);
+        }
+
+        float[] normals = generateNormals(buffers);
+
+        String[] materialNames = new String[materialIds.size()];
+        materialIds.forEach((name, id) -> materialNames[id] = name);
+
+        return new MeshData(buffers.positions, normals, buffers.texCoords,
+                buffers.positionIndices, buffers.normalIndices, buffers.texCoordIndices,
+                buffers.materialIds, materialNames, libraries.toArray(new String[0]));
+    }
+
+    /**
+     Give every triangle with a corner without normal generated normals for all of its corners. Returns the normals
+     of the mesh with the generated ones appended, the normal indices are changed in place
+     **/
+    private static float[] generateNormals(MeshBuffers mesh) {
+        int[] positionIndices = mesh.positionIndices;
+        int[] normalIndices = mesh.normalIndices;
+        float[] positions = mesh.positions;
+
+        int normalCount = mesh.normals.length / 3;
+        float[] normals = mesh.normals;
+
+        //the normal shared by the faces of a smoothing group at a vertex, keyed by group and vertex
+        SmoothNormalMap smoothNormals = new SmoothNormalMap();
+        float[] faceNormal = new float[3];
+        int firstGenerated = normalCount;
+
+        for (int t = 0; t < positionIndices.length / 3; t++) {
+            int corner = t * 3;
+            if (normalIndices[corner] >= 0 && normalIndices[corner + 1] >= 0 && normalIndices[corner + 2] >= 0)
+                continue;
+
+            //not normalized, its length is twice the area of the triangle and weights it in the smooth normals
+            setFaceNormal(faceNormal, positions, positionIndices[corner], positionIndices[corner + 1], positionIndices[corner + 2]);
+            int group = mesh.smoothingGroups[t];
+
+            for (int i = 0; i < 3; i++) {
+                int normal;
+                if (group == 0) {
+                    normal = i == 0 ? normalCount++ : normalIndices[corner];
+                } else {
+                    long key = (long) group << 32 | positionIndices[corner + i];
+                    int shared = smoothNormals.putIfAbsent(key, normalCount);
+                    normal = shared >= 0 ? shared : normalCount++;
+                }
+
+                normals = ensureCapacity(normals, normalCount * 3);
+                //a flat normal is only added by the first corner, the others reuse it
+                if (group != 0 || i == 0) {
+                    normals[normal * 3] += faceNormal[0];
+                    normals[normal * 3 + 1] += faceNormal[1];
+                    normals[normal * 3 + 2] += faceNormal[2];
+                }
+                normalIndices[corner + i] = normal;
+            }
+        }
+
+        if (normalCount == firstGenerated)
+            return normals;
+
+        normals = Arrays.copyOf(normals, normalCount * 3);
+        for (int n = firstGenerated; n < normalCount; n++) {
+            float x = normals[n * 3], y = normals[n * 3 + 1], z = normals[n * 3 + 2];
+            float length = (float) Math.sqrt(x * x + y * y + z * z);
+            //degenerate faces are never hit, any unit normal will do
+            if (length == 0 || !Float.isFinite(length)) {
+                x = 0;
+                y = 0;
+                z = length = 1;
+            }
+            normals[n * 3] = x / length;
+            normals[n * 3 + 1] = y / length;
+            normals[n * 3 + 2] = z / length;
+        }
+        return normals;
+    }
+
+    /**
+     Cross product of the edges from the first vertex of a triangle, without a Vec3 per face
+     **/
+    private static void setFaceNormal(float[] target, float[] positions, int i0, int i1, int i2) {
+        float e1x = positions[i1 * 3] - positions[i0 * 3];
+        float e1y = positions[i1 * 3 + 1] - positions[i0 * 3 + 1];
+        float e1z = positions[i1 * 3 + 2] - positions[i0 * 3 + 2];
+        float e2x = positions[i2 * 3] - positions[i0 * 3];
+        float e2y = positions[i2 * 3 + 1] - positions[i0 * 3 + 1];
+        float e2z = positions[i2 * 3 + 2] - positions[i0 * 3 + 2];
+        target[0] = e1y * e2z - e1z * e2y;
+        target[1] = e1z * e2x - e1x * e2z;
+        target[2] = e1x * e2y - e1y * e2x;
+    }
+
+    private static int lastLineBreak(ByteBuffer buffer, int start, int end) {
+        for (int i = end - 1; i >= start; i--) {
+            if (buffer.get(i) == '\n')
+                return i;
+        }
+        return -1;
+    }
+
+    private static int nextLineBreak(ByteBuffer buffer, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (buffer.get(i) == '\n')
+                return i;
+        }
+        return -1;
+    }
+
+    /*
+        The buffers of the whole mesh, every chunk fills its own range of them
+     */
+    private static final class MeshBuffers {
+        final float[] positions;
+        final float[] normals;
+        final float[] texCoords;
+        final int[] positionIndices;
+        final int[] normalIndices;
+        final int[] texCoordIndices;
+        //per triangle, -1 without a material and 0 outside of a smoothing group
+        final int[] materialIds;
+        final int[] smoothingGroups;
+
+        MeshBuffers(int positionCount, int normalCount, int texCoordCount, int triangleCount) {
+            positions = new float[Math.multiplyExact(positionCount, 3)];
+            normals = new float[Math.multiplyExact(normalCount, 3)];
+            texCoords = new float[Math.multiplyExact(texCoordCount, 2)];
+            positionIndices = new int[Math.multiplyExact(triangleCount, 3)];
+            normalIndices = new int[triangleCount * 3];
+            texCoordIndices = new int[triangleCount * 3];
+            materialIds = new int[triangleCount];
+            smoothingGroups = new int[triangleCount];
+        }
+    }
+
+    /*
+        Normal indices keyed by smoothing group and vertex, with open addressing in two arrays instead of
+        a boxed Long and Integer per corner. Keys are never 0, as smoothing group 0 shares no normals
+     */
+    private static final class SmoothNormalMap {
+        private long[] keys = new long[1024];
+        private int[] values = new int[1024];
+        private int size;
+
+        /**
+         The value of the key, or -1 after the value was added for it
+         **/
+        int putIfAbsent(long key, int value) {
+            int mask = keys.length - 1;
+            int slot = hash(key) & mask;
+            while (keys[slot] != 0) {
+                if (keys[slot] == key)
+                    return values[slot];
+                slot = (slot + 1) & mask;
+            }
+
+            keys[slot] = key;
+            values[slot] = value;
+            //at most half full keeps the probe sequences short
+            if (++size * 2 > keys.length)
+                grow();
+            return -1;
+        }
+
+        private void grow() {
+            long[] oldKeys = keys;
+            int[] oldValues = values;
+            keys = new long[oldKeys.length * 2];
+            values = new int[oldKeys.length * 2];
+            int mask = keys.length - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] == 0)
+                    continue;
+                int slot = hash(oldKeys[i]) & mask;
+                while (keys[slot] != 0)
+                    slot = (slot + 1) & mask;
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+
+        private static int hash(long key) {
+            //the vertex is in the low bits, mix the group into them
+            long mixed = key * 0x9E3779B97F4A7C15L;
+            return (int) (mixed ^ (mixed >>> 32));
+        }
+    }
+
+
+    /*
+        A range of whole lines of a mapped window. Parsing a chunk only touches the chunk itself,
+        faces keep the indices as they are in the file until they are resolved.
+     */
+    private static final class Chunk {
+        private final ByteBuffer buffer;
+        private int position;
+        private final int limit;
+
+        //resolved relative index that points before the first element
+        private static final int BEFORE_FIRST = Integer.MIN_VALUE;
+
+        //lines parsed so far, for error messages
+        private long line;
+        private String error;
+
+        //3 floats per position and normal, 2 per texture coordinate
+        private float[] positions = new float[3 * 1024];
+        private int positionCount;
+        private float[] normals = new float[3 * 1024];
+        private int normalCount;
+        private float[] texCoords = new float[2 * 1024];
+        private int texCoordCount;
+
+        /*
+            3 per triangle. Positive indices as in the file counting from 1, 0 for a corner without a normal
+            or texture coordinate. A negative index r is stored as count + r - RELATIVE_BIAS, with the count of
+            elements this chunk had read before the face, as the elements of the chunks before are not known yet
+         */
+        private int[] positionIndices = new int[3 * 1024];
+        private int[] normalIndices = new int[3 * 1024];
+        private int[] texCoordIndices = new int[3 * 1024];
+        private int triangleCount;
+
+        /*
+            Per triangle, the material as index into materialNames and the smoothing group. Both are -1 for
+            triangles before the first usemtl or s of the chunk, they continue the state of the chunk before.
+         */
+        private int[] triangleMaterials = new int[1024];
+        private int[] triangleSmoothingGroups = new int[1024];
+        private final List<String> materialNames = new ArrayList<>();
+        private final List<String> libraries = new ArrayList<>();
+        //current state while parsing, the state at the end of the chunk afterwards
+        private int material = -1;
+        private int smoothingGroup = -1;
+
+        //where the data of this chunk starts in the mesh, set before the second pass
+        private int positionOffset, normalOffset, texCoordOffset, triangleOffset;
+        //mesh wide ids of materialNames and the state at the start of the chunk, set before the second pass
+        private int[] materialIds;
+        private int initialMaterial, initialSmoothingGroup;
+
+        Chunk(ByteBuffer buffer, int start, int end) {
+            this.buffer = buffer;
+            this.position = start;
+            this.limit = end;
+        }
+
+        void parse() {
+            try {
+                while (position < limit) {
+                    line++;
+                    parseLine();
+                    skipLine();
+                }
+            } catch (IOException e) {
+                error = e.getMessage();
+            }
+        }
+
+        private void parseLine() throws IOException {
+            skipSpaces();
+
+            byte first = peek(0);
+            byte second = peek(1);
+            if (first == 'v' && isSpace(second)) {
+                position += 2;
+                positions = ensureCapacity(positions, positionCount * 3 + 3);
+                readFloats(positions, positionCount++ * 3, 3);
+            } else if (first == 'v' && second == 'n' && isSpace(peek(2))) {
+                position += 3;
+                normals = ensureCapacity(normals, normalCount * 3 + 3);
+                readFloats(normals, normalCount++ * 3, 3);
+            } else if (first == 'v' && second == 't' && isSpace(peek(2))) {
+                position += 3;
+                texCoords = ensureCapacity(texCoords, texCoordCount * 2 + 2);
+                readTexCoord(texCoordCount++ * 2);
+            } else if (first == 'f' && isSpace(second)) {
+                position += 2;
+                readFace();
+            } else if (first == 's' && isSpace(second)) {
+                position += 2;
+                readSmoothingGroup();
+            } else if (startsWithKeyword("usemtl")) {
+                position += 6;
+                String name = readRestOfLine();
+                if (name.isEmpty())
+                    throw new IOException("expected a material name");
+                material = materialNames.indexOf(name);
+                if (material < 0) {
+                    material = materialNames.size();
+                    materialNames.add(name);
+                }
+            } else if (startsWithKeyword("mtllib")) {
+                position += 6;
+                //several libraries are separated by spaces, so their names cannot contain any
+                for (String library : readRestOfLine().split("[ \t]+")) {
+                    if (!library.isEmpty())
+                        libraries.add(library);
+                }
+            }
+        }
+
+        private boolean startsWithKeyword(String keyword) {
+            for (int i = 0; i < keyword.length(); i++) {
+                if (peek(i) != keyword.charAt(i))
+                    return false;
+            }
+            return isSpace(peek(keyword.length()));
+        }
+
+        /**
+         The rest of the line up to a comment, without surrounding spaces
+         **/
+        private String readRestOfLine() {
+            skipSpaces();
+            int start = position;
+            int end = position;
+            while (!isLineEnd(peek(0))) {
+                position++;
+                if (!isSpace(buffer.get(position - 1)))
+                    end = position;
+            }
+
+            byte[] text = new byte[end - start];
+            buffer.get(start, text);
+            return new String(text, StandardCharsets.UTF_8);
+        }
+
+        private void readSmoothingGroup() throws IOException {
+            skipSpaces();
+            if (startsWithWord("off")) {
+                smoothingGroup = 0;
+                return;
+            }
+
+            int value = 0;
+            int digits = 0;
+            byte c;
+            while (isDigit(c = peek(0))) {
+                value = value * 10 + (c - '0');
+                position++;
+                digits++;
+            }
+            if (digits == 0 || digits > 9 || !isDelimiter(peek(0)))
+                throw new IOException("expected a smoothing group or off");
+            smoothingGroup = value;
+        }
+
+        private boolean startsWithWord(String word) {
+            for (int i = 0; i < word.length(); i++) {
+                if (peek(i) != word.charAt(i))
+                    return false;
+            }
+            return isDelimiter(peek(word.length()));
+        }
+
+        private void readFloats(float[] target, int offset, int count) throws IOException {
+            for (int i = 0; i < count; i++)
+                target[offset + i] = readFloat();
+        }
+
+        /**
+         Read u and the optional v of a texture coordinate, v is 0 if the line ends after u and a w is left to skipLine
+         **/
+        private void readTexCoord(int offset) throws IOException {
+            texCoords[offset] = readFloat();
+            skipSpaces();
+            texCoords[offset + 1] = isLineEnd(peek(0)) ? 0 : readFloat();
+        }
+
+        /**
+         Read a face and add it as a fan of triangles around its first corner, each triangle as soon as its last corner is read
+         **/
+        private void readFace() throws IOException {
+            int cornerCount = 0;
+            int firstPosition = 0, firstTexCoord = 0, firstNormal = 0;
+            int lastPosition = 0, lastTexCoord = 0, lastNormal = 0;
+
+            skipSpaces();
+            while (!isLineEnd(peek(0))) {
+                int positionIndex = readIndex(positionCount);
+                int texCoordIndex = 0;
+                int normalIndex = 0;
+
+                if (peek(0) == '/') {
+                    position++;
+                    if (peek(0) != '/')
+                        texCoordIndex = readIndex(texCoordCount);
+                    if (peek(0) == '/') {
+                        position++;
+                        normalIndex = readIndex(normalCount);
+                    }
+                }
+
+                if (!isDelimiter(peek(0)))
+                    throw new IOException("expected a space between the corners of a face");
+                skipSpaces();
+
+                if (cornerCount == 0) {
+                    firstPosition = positionIndex;
+                    firstTexCoord = texCoordIndex;
+                    firstNormal = normalIndex;
+                } else if (cornerCount >= 2) {
+                    addTriangle(firstPosition, lastPosition, positionIndex, firstTexCoord, lastTexCoord, texCoordIndex,
+                            firstNormal, lastNormal, normalIndex);
+                }
+                lastPosition = positionIndex;
+                lastTexCoord = texCoordIndex;
+                lastNormal = normalIndex;
+                cornerCount++;
+            }
+
+            if (cornerCount < 3)
+                throw new IOException("a face needs at least 3 corners, found " + cornerCount);
+        }
+
+        private void addTriangle(int p0, int p1, int p2, int t0, int t1, int t2, int n0, int n1, int n2) {
+            int corner = triangleCount * 3;
+            positionIndices = ensureCapacity(positionIndices, corner + 3);
+            texCoordIndices = ensureCapacity(texCoordIndices, corner + 3);
+            normalIndices = ensureCapacity(normalIndices, corner + 3);
+            triangleMaterials = ensureCapacity(triangleMaterials, triangleCount + 1);
+            triangleSmoothingGroups = ensureCapacity(triangleSmoothingGroups, triangleCount + 1);
+
+            positionIndices[corner] = p0;
+            positionIndices[corner + 1] = p1;
+            positionIndices[corner + 2] = p2;
+            texCoordIndices[corner] = t0;
+            texCoordIndices[corner + 1] = t1;
+            texCoordIndices[corner + 2] = t2;
+            normalIndices[corner] = n0;
+            normalIndices[corner + 1] = n1;
+            normalIndices[corner + 2] = n2;
+            triangleMaterials[triangleCount] = material;
+            triangleSmoothingGroups[triangleCount] = smoothingGroup;
+            triangleCount++;
+        }
+
+        /**
+         Read a non-zero index as it is in the file, negative ones relative to count, the elements of its kind read so far
+         **/
+        private int readIndex(int count) throws IOException {
+            boolean negative = peek(0) == '-';
+            if (negative)
+                position++;
+
+            int value = 0;
+            int digits = 0;
+            byte c;
+            while (isDigit(c = peek(0))) {
+                value = value * 10 + (c - '0');
+                position++;
+                digits++;
+            }
+
+            if (digits == 0 || digits > 9 || value == 0)
+                throw new IOException("expected a non-zero index");
+            return negative ? count - value - RELATIVE_BIAS : value;
+        }
+
+        /**
+         Read a decimal number with optional sign, fraction and exponent. The digits are collected in a long and
+         scaled by an exact power of ten, anything unusual like inf or nan goes through Float.parseFloat
+         **/
+        private float readFloat() throws IOException {
+            skipSpaces();
+            int start = position;
+
+            boolean negative = false;
+            byte c = peek(0);
+            if (c == '-' || c == '+') {
+                negative = c == '-';
+                position++;
+            }
+
+            long mantissa = 0;
+            int digits = 0;
+            int exponent = 0;
+            boolean anyDigit = false;
+            boolean truncated = false;
+
+            while (isDigit(c = peek(0))) {
+                if (digits < MAX_MANTISSA_DIGITS) {
+                    mantissa = mantissa * 10 + (c - '0');
+                    if (mantissa != 0)
+                        digits++;
+                } else {
+                    truncated = true;
+                }
+                anyDigit = true;
+                position++;
+            }
+
+            if (c == '.') {
+                position++;
+                while (isDigit(c = peek(0))) {
+                    if (digits < MAX_MANTISSA_DIGITS) {
+                        mantissa = mantissa * 10 + (c - '0');
+                        if (mantissa != 0)
+                            digits++;
+                        exponent--;
+                    } else {
+                        truncated = true;
+                    }
+                    anyDigit = true;
+                    position++;
+                }
+            }
+
+            if (anyDigit && (c == 'e' || c == 'E')) {
+                position++;
+                boolean negativeExponent = false;
+                c = peek(0);
+                if (c == '-' || c == '+') {
+                    negativeExponent = c == '-';
+                    position++;
+                }
+
+                int value = 0;
+                boolean anyExponentDigit = false;
+                while (isDigit(c = peek(0))) {
+                    //far beyond the range of a float, stop before the int overflows
+                    if (value < 100000)
+                        value = value * 10 + (c - '0');
+                    anyExponentDigit = true;
+                    position++;
+                }
+                if (!anyExponentDigit)
+                    return parseSlow(start);
+                exponent += negativeExponent ? -value : value;
+            }
+
+            if (!anyDigit || !isDelimiter(peek(0)))
+                return parseSlow(start);
+
+            if (mantissa == 0)
+                return negative ? -0f : 0f;
+            //a mantissa up to 2^53 and a power of ten up to 10^22 are exact in a double, one multiplication or division
+            //rounds correctly. Rounding to a float again is only wrong if that landed exactly halfway between two floats
+            if (truncated || mantissa > MAX_EXACT_MANTISSA || Math.abs(exponent) >= POWERS_OF_TEN.length)
+                return parseSlow(start);
+
+            double value = exponent >= 0 ? mantissa * POWERS_OF_TEN[exponent] : mantissa / POWERS_OF_TEN[-exponent];
+            if (isHalfwayBetweenFloats(value))
+                return parseSlow(start);
+            return (float) (negative ? -value : value);
+        }
+
+        private float parseSlow(int start) throws IOException {
+            position = start;
+            while (!isDelimiter(peek(0)))
+                position++;
+
+            byte[] token = new byte[position - start];
+            buffer.get(start, token);
+            try {
+                return Float.parseFloat(new String(token, StandardCharsets.US_ASCII));
+            } catch (NumberFormatException e) {
+                throw new IOException("expected a number");
+            }
+        }
+
+        /**
+         Copy the data of the chunk to its range of the mesh and make the indices count from 0 over the whole mesh
+         **/
+        void copyInto(MeshBuffers mesh) {
+            System.arraycopy(positions, 0, mesh.positions, positionOffset * 3, positionCount * 3);
+            System.arraycopy(normals, 0, mesh.normals, normalOffset * 3, normalCount * 3);
+            System.arraycopy(texCoords, 0, mesh.texCoords, texCoordOffset * 2, texCoordCount * 2);
+
+            int meshPositions = mesh.positions.length / 3;
+            int meshNormals = mesh.normals.length / 3;
+            int meshTexCoords = mesh.texCoords.length / 2;
+            int offset = triangleOffset * 3;
+
+            for (int i = 0; i < triangleCount * 3; i++) {
+                int positionIndex = resolveIndex(positionIndices[i], positionOffset);
+                int normalIndex = resolveIndex(normalIndices[i], normalOffset);
+                int texCoordIndex = resolveIndex(texCoordIndices[i], texCoordOffset);
+
+                if (positionIndex >= meshPositions || normalIndex >= meshNormals || texCoordIndex >= meshTexCoords
+                        || positionIndex < 0 || normalIndex < -1 || texCoordIndex < -1) {
+                    String face = "Face " + (triangleOffset + i / 3 + 1);
+                    error = positionIndex >= meshPositions || positionIndex < 0 ? face + indexError("vertex", positionIndex, meshPositions)
+                            : normalIndex >= meshNormals || normalIndex < -1 ? face + indexError("normal", normalIndex, meshNormals)
+                            : face + indexError("texture coordinate", texCoordIndex, meshTexCoords);
+                    return;
+                }
+
+                mesh.positionIndices[offset + i] = positionIndex;
+                mesh.normalIndices[offset + i] = normalIndex;
+                mesh.texCoordIndices[offset + i] = texCoordIndex;
+            }
+
+            for (int t = 0; t < triangleCount; t++) {
+                int localMaterial = triangleMaterials[t];
+                int group = triangleSmoothingGroups[t];
+                mesh.materialIds[triangleOffset + t] = localMaterial >= 0 ? materialIds[localMaterial] : initialMaterial;
+                mesh.smoothingGroups[triangleOffset + t] = group >= 0 ? group : initialSmoothingGroup;
+            }
+        }
+
+        /**
+         Index counting from 0 over the whole mesh, -1 for a missing one
+         **/
+        private static int resolveIndex(int index, int chunkOffset) {
+            if (index < 0) {
+                //a negative index that reaches before the first element, kept apart from a missing one
+                int resolved = chunkOffset + index + RELATIVE_BIAS;
+                return resolved >= 0 ? resolved : BEFORE_FIRST;
+            }
+            return index - 1;
+        }
+
+        private static String indexError(String element, int index, int count) {
+            if (index == BEFORE_FIRST)
+                return " references a " + element + " before the first one";
+            return " references " + element + " " + (index + 1) + " of " + count;
+        }
+
+        /**
+         Byte at the given distance from the read position, 0 past the end of the chunk
+         **/
+        private byte peek(int offset) {
+            int index = position + offset;
+            return index < limit ? buffer.get(index) : 0;
+        }
+
+        private void skipSpaces() {
+            while (position < limit && isSpace(buffer.get(position)))
+                position++;
+        }
+
+        private void skipLine() {
+            while (position < limit && buffer.get(position) != '\n')
+                position++;
+            position++;
+        }
+    }
+
+    private static float[] ensureCapacity(float[] array, int capacity) {
+        return capacity <= array.length ? array : Arrays.copyOf(array, Math.max(capacity, array.length * 2));
+    }
+
+    private static int[] ensureCapacity(int[] array, int capacity) {
+        return capacity <= array.length ? array : Arrays.copyOf(array, Math.max(capacity, array.length * 2));
+    }
+
+    private static boolean isDigit(byte c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isSpace(byte c) {
+        return c == ' ' || c == '\t';
+    }
+
+    private static boolean isLineEnd(byte c) {
+        //0 is the end of the chunk
+        return c == '\n' || c == '\r' || c == '#' || c == 0;
+    }
+
+    private static boolean isDelimiter(byte c) {
+        return isSpace(c) || isLineEnd(c);
+    }
+
+    /**
+     Whether a double in the normal range of floats lies exactly halfway between two floats,
+     the 29 bits of its mantissa below those of a float are a one followed by zeros then
+     **/
+    private static boolean isHalfwayBetweenFloats(double value) {
+        return (Double.doubleToRawLongBits(value) & ((1L << 29) - 1)) == 1L << 28;
+    }
+}